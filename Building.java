@@ -0,0 +1,432 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A building made of named floors, each a list of rooms. Floors of an opened
+ * file stay on disk until first asked for; decoded floors are kept in an LRU
+ * cache bounded by a memory budget. The active floor and one neighbour, in
+ * the direction of the last switch, are never evicted and the neighbour is
+ * decoded in the background so switching to it is immediate. Floors changed
+ * since the last save have no copy on disk and stay resident until saved.
+ *
+ * <p>File format version 2 wraps one version 1 document per floor:
+ * <pre>
+ *   header     magic "FPLN", u16 version 2, u16 reserved, floor count   (12 bytes)
+ *   directory  u64 offset, u32 byte length, u32 room count, per floor   (16 bytes each)
+ *   names      u32 byte length followed by UTF-8 bytes, per floor
+ *   floors     a complete version 1 document each, at its offset
+ * </pre>
+ * Floors are decoded straight out of a memory-mapped slice of the file, and
+ * saving copies floors that were never changed byte for byte. A building with
+ * a single floor is saved as a plain version 1 file.
+ */
+final class Building {
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 12;
+    static final int DIRECTORY_ENTRY_BYTES = 16;
+    static final long DEFAULT_BUDGET_BYTES = 256L << 20;
+    static final String DEFAULT_FLOOR_NAME = "Ground Floor";
+
+    private static final class Floor {
+        String name;
+        int roomCount;
+        long offset = -1;
+        long length;
+        List<Room> rooms;
+        long bytes;
+        long lastUse;
+        /** Counts {@link #setRooms} calls, so a save can tell whether the floor changed meanwhile. */
+        int changes;
+
+        Floor(String name) {
+            this.name = name;
+        }
+
+        Floor copy() {
+            Floor copy = new Floor(name);
+            copy.roomCount = roomCount;
+            copy.offset = offset;
+            copy.length = length;
+            copy.rooms = rooms;
+            copy.changes = changes;
+            return copy;
+        }
+
+        boolean isOnDisk() {
+            return offset >= 0;
+        }
+    }
+
+    private final ArrayList<Floor> floors = new ArrayList<>();
+    private final long budgetBytes;
+    /** Shared by all buildings, so replacing the open one leaves no thread behind. */
+    private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "floor-prefetch");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object saveLock = new Object();
+    private Path source;
+    /** Moves whenever a save replaces the file floors are read from. */
+    private long sourceVersion = 0;
+    private long residentBytes = 0;
+    private int active = 0;
+    private int neighbour = -1;
+    private long clock = 0;
+
+    /** A new building with one empty floor. */
+    Building(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        setRooms(addFloor(DEFAULT_FLOOR_NAME), List.of());
+    }
+
+    private Building(long budgetBytes, Path source) {
+        this.budgetBytes = budgetBytes;
+        this.source = source;
+    }
+
+    /** True when {@code path} is a multi-floor (version 2) project file. */
+    static boolean isBuildingFile(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == PlanFile.MAGIC && in.readUnsignedShort() == VERSION;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a project file. Only the directory of a version 2 file is read;
+     * floors are decoded when first needed. A version 1 file becomes a
+     * building with one floor that is paged the same way, and a legacy CSV file
+     * one whose rooms are read immediately.
+     */
+    static Building open(Path path, long budgetBytes) throws IOException {
+        Building building = new Building(budgetBytes, path);
+        if (!PlanFile.isBinary(path)) {
+            building.setRooms(building.addFloor(DEFAULT_FLOOR_NAME), PlanFile.readCsv(path));
+            building.source = null;
+            return building;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            if ((header.getShort(4) & 0xffff) != VERSION) {
+                Floor floor = new Floor(DEFAULT_FLOOR_NAME);
+                building.floors.add(floor);
+                floor.offset = 0;
+                floor.length = size;
+                floor.roomCount = header.getInt(8);
+                return building;
+            }
+            int floorCount = header.getInt(8);
+            if (floorCount < 0 || HEADER_BYTES + (long) floorCount * DIRECTORY_ENTRY_BYTES > size) {
+                throw new IOException("Corrupt building file header");
+            }
+            ByteBuffer directory = ByteBuffer.allocate(floorCount * DIRECTORY_ENTRY_BYTES);
+            readFully(channel, directory, HEADER_BYTES);
+            long pos = HEADER_BYTES + (long) floorCount * DIRECTORY_ENTRY_BYTES;
+            ByteBuffer len = ByteBuffer.allocate(4);
+            for (int i = 0; i < floorCount; i++) {
+                len.clear();
+                readFully(channel, len, pos);
+                int n = len.getInt(0);
+                if (n < 0 || pos + 4 + n > size) {
+                    throw new IOException("Corrupt building file: bad name for floor " + (i + 1));
+                }
+                ByteBuffer name = ByteBuffer.allocate(n);
+                readFully(channel, name, pos + 4);
+                pos += 4 + n;
+
+                Floor floor = new Floor(new String(name.array(), StandardCharsets.UTF_8));
+                floor.offset = directory.getLong(i * DIRECTORY_ENTRY_BYTES);
+                floor.length = directory.getInt(i * DIRECTORY_ENTRY_BYTES + 8) & 0xffffffffL;
+                floor.roomCount = directory.getInt(i * DIRECTORY_ENTRY_BYTES + 12);
+                if (floor.offset < 0 || floor.offset + floor.length > size) {
+                    throw new IOException("Corrupt building file: floor " + (i + 1) + " lies outside the file");
+                }
+                building.floors.add(floor);
+            }
+        }
+        if (building.floors.isEmpty()) {
+            building.setRooms(building.addFloor(DEFAULT_FLOOR_NAME), List.of());
+        }
+        return building;
+    }
+
+    public synchronized int floorCount() {
+        return floors.size();
+    }
+
+    public synchronized String floorName(int floor) {
+        return floors.get(floor).name;
+    }
+
+    public synchronized boolean isResident(int floor) {
+        return floors.get(floor).rooms != null;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /** Appends an empty floor and returns its index. */
+    public synchronized int addFloor(String name) {
+        Floor floor = new Floor(name);
+        floor.rooms = List.of();
+        floor.lastUse = ++clock;
+        floors.add(floor);
+        return floors.size() - 1;
+    }
+
+    /**
+     * The rooms of a floor, decoding it first if it is not resident. Decoding
+     * happens without holding the building's lock, so it may run on a worker
+     * thread while the caller's thread keeps using resident floors.
+     */
+    public List<Room> rooms(int index) throws IOException {
+        while (true) {
+            Path path;
+            long offset, length, version;
+            synchronized (this) {
+                Floor floor = floors.get(index);
+                floor.lastUse = ++clock;
+                if (floor.rooms != null) return floor.rooms;
+                path = source;
+                offset = floor.offset;
+                length = floor.length;
+                version = sourceVersion;
+            }
+            List<Room> rooms;
+            try {
+                rooms = readFloor(path, offset, length);
+            } catch (IOException e) {
+                synchronized (this) {
+                    if (sourceVersion != version) continue;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                Floor floor = floors.get(index);
+                if (floor.rooms != null) return floor.rooms;
+                // A save replaced the file while it was read; read the floor again from the new one.
+                if (sourceVersion != version) continue;
+                install(floor, rooms);
+                evict();
+                return rooms;
+            }
+        }
+    }
+
+    /** Replaces a floor's rooms. The floor stays resident until the building is saved. */
+    public synchronized void setRooms(int index, Collection<Room> rooms) {
+        Floor floor = floors.get(index);
+        if (floor.rooms != null) residentBytes -= floor.bytes;
+        floor.offset = -1;
+        floor.lastUse = ++clock;
+        floor.changes++;
+        install(floor, Collections.unmodifiableList(new ArrayList<>(rooms)));
+        evict();
+    }
+
+    /**
+     * Makes {@code index} the active floor and starts decoding its neighbour
+     * in the direction of travel, so that stepping on is immediate.
+     */
+    public synchronized void setActive(int index) {
+        int previous = active;
+        active = index;
+        int step = index < previous ? -1 : 1;
+        neighbour = index + step >= 0 && index + step < floors.size() ? index + step
+                : index - step >= 0 && index - step < floors.size() ? index - step : -1;
+        floors.get(index).lastUse = ++clock;
+        if (neighbour >= 0 && floors.get(neighbour).rooms == null) {
+            int n = neighbour;
+            PREFETCHER.execute(() -> {
+                try {
+                    rooms(n);
+                } catch (IOException e) {
+                    // reported again when the floor is actually opened
+                }
+            });
+        }
+        evict();
+    }
+
+    /**
+     * Writes the building to {@code path} through a temporary file that is
+     * renamed over it. Floors that were never changed are copied from the
+     * current file without being decoded. The building's lock is held only to
+     * take a copy of the floor table and to switch to the new file, so other
+     * threads can keep switching floors while the file is written.
+     */
+    public void save(Path path) throws IOException {
+        synchronized (saveLock) {
+            ArrayList<Floor> saved;
+            ArrayList<Floor> copies = new ArrayList<>();
+            Path from;
+            synchronized (this) {
+                saved = new ArrayList<>(floors);
+                for (Floor floor : floors) {
+                    copies.add(floor.copy());
+                }
+                from = source;
+            }
+            if (copies.size() == 1) {
+                Floor copy = copies.get(0);
+                PlanFile.save(copy.rooms != null ? copy.rooms : readFloor(from, copy.offset, copy.length), path);
+                if (!PlanFile.isCsv(path)) {
+                    long length = Files.size(path);
+                    synchronized (this) {
+                        Floor floor = saved.get(0);
+                        if (floor.changes == copy.changes) {
+                            floor.offset = 0;
+                            floor.length = length;
+                        }
+                        source = path;
+                        sourceVersion++;
+                        evict();
+                    }
+                }
+                return;
+            }
+            saveFloors(path, copies, from, saved);
+        }
+    }
+
+    private void saveFloors(Path path, List<Floor> copies, Path from, List<Floor> saved) throws IOException {
+        long[] offsets = new long[copies.size()];
+        long[] lengths = new long[copies.size()];
+        Path temp = PlanFile.createTempFor(path);
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 FileChannel in = from != null ? FileChannel.open(from, StandardOpenOption.READ) : null) {
+                ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES + copies.size() * DIRECTORY_ENTRY_BYTES);
+                out.position(head.capacity());
+                for (Floor floor : copies) {
+                    byte[] name = floor.name.getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer entry = ByteBuffer.allocate(4 + name.length).putInt(name.length).put(name);
+                    writeFully(out, entry.flip());
+                }
+                OutputStream stream = Channels.newOutputStream(out);
+                for (int i = 0; i < copies.size(); i++) {
+                    Floor floor = copies.get(i);
+                    offsets[i] = out.position();
+                    if (floor.isOnDisk()) {
+                        long copied = 0;
+                        while (copied < floor.length) {
+                            copied += in.transferTo(floor.offset + copied, floor.length - copied, out);
+                        }
+                    } else {
+                        PlanFile.writeBinary(floor.rooms, stream);
+                    }
+                    lengths[i] = out.position() - offsets[i];
+                    if (lengths[i] > 0xffffffffL) {
+                        throw new IOException("Floor '" + floor.name + "' is too large");
+                    }
+                }
+                head.putInt(PlanFile.MAGIC).putShort((short) VERSION).putShort((short) 0).putInt(copies.size());
+                for (int i = 0; i < copies.size(); i++) {
+                    head.putLong(offsets[i]).putInt((int) lengths[i]).putInt(copies.get(i).roomCount);
+                }
+                head.flip();
+                while (head.hasRemaining()) {
+                    out.write(head, head.position());
+                }
+                out.force(true);
+            }
+            synchronized (this) {
+                try {
+                    Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+                source = path;
+                sourceVersion++;
+                for (int i = 0; i < saved.size(); i++) {
+                    Floor floor = saved.get(i);
+                    if (floor.changes != copies.get(i).changes) continue;
+                    floor.offset = offsets[i];
+                    floor.length = lengths[i];
+                }
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void install(Floor floor, List<Room> rooms) {
+        long bytes = 64;
+        for (Room room : rooms) {
+            bytes += 8 + PlanHistory.PlanEdit.estimateBytes(room);
+        }
+        floor.rooms = rooms;
+        floor.roomCount = rooms.size();
+        floor.bytes = bytes;
+        residentBytes += bytes;
+    }
+
+    /** Drops least recently used floors that can be read back until the budget is met. */
+    private void evict() {
+        while (residentBytes > budgetBytes) {
+            Floor victim = null;
+            for (int i = 0; i < floors.size(); i++) {
+                Floor floor = floors.get(i);
+                if (i == active || i == neighbour || floor.rooms == null || !floor.isOnDisk()) continue;
+                if (victim == null || floor.lastUse < victim.lastUse) victim = floor;
+            }
+            if (victim == null) return;
+            victim.rooms = null;
+            residentBytes -= victim.bytes;
+        }
+    }
+
+    private static List<Room> readFloor(Path path, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Floor too large: " + length + " bytes");
+        }
+        List<Room> rooms;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            rooms = PlanFile.decode(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        }
+        HashSet<Integer> ids = new HashSet<>(rooms.size() * 2);
+        for (Room room : rooms) {
+            // FloorPlan.add would reject the room, leaving a half-filled plan on the event thread.
+            if (room.id > 0 && !ids.add(room.id)) throw new IOException("Duplicate room id " + room.id);
+        }
+        return Collections.unmodifiableList(rooms);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated building file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
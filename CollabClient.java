@@ -0,0 +1,272 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Connects a {@link FloorPlan} to a {@link CollabServer}. Local batches are
+ * applied at once and sent to the server; batches from other clients are
+ * applied on the plan's own thread through {@code modelThread}. Socket reads
+ * and writes happen on two daemon threads, never on the plan's thread.
+ *
+ * <p>The server orders all batches, and the last one to touch a room wins.
+ * While a local change to a room has not come back from the server, remote
+ * changes to that room are ignored: they were ordered before the local change,
+ * which will overwrite them everywhere. After a local clear every remote
+ * change is ignored until the clear comes back. This keeps all clients equal
+ * to the server's order without rolling local edits back.
+ */
+final class CollabClient implements Closeable {
+    private final FloorPlan plan;
+    private final Executor modelThread;
+    private final Consumer<Runnable> untracked;
+    private final FloorPlan.Listener listener = this::planChanged;
+    private final LinkedBlockingQueue<ByteBuffer> outbox = new LinkedBlockingQueue<>();
+    private final HashMap<Integer, Integer> pending = new HashMap<>();
+    private int pendingClears = 0;
+    private boolean applyingRemote = false;
+    private boolean joined = false;
+    private SocketChannel channel;
+    private Thread writer;
+    private final AtomicBoolean lost = new AtomicBoolean();
+    private volatile boolean closing = false;
+    private volatile int clientId = 0;
+    private volatile long sequence = 0;
+    private volatile Consumer<IOException> onDisconnect = e -> { };
+
+    /**
+     * @param modelThread runs work on the thread that owns {@code plan}, such as
+     *                    {@code SwingUtilities::invokeLater}
+     * @param untracked   wraps the application of remote batches, so they can be
+     *                    kept out of the local undo history
+     */
+    CollabClient(FloorPlan plan, Executor modelThread, Consumer<Runnable> untracked) {
+        this.plan = plan;
+        this.modelThread = modelThread;
+        this.untracked = untracked;
+    }
+
+    /**
+     * Connects and joins. If the session is empty the plan's rooms are shared
+     * with it; otherwise they are replaced by the session's rooms.
+     */
+    void connect(InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Thread reader = new Thread(this::readLoop, "collab-reader");
+        writer = new Thread(this::writeLoop, "collab-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+        outbox.add(ByteBuffer.allocate(5).putInt(1).put(CollabServer.HELLO).flip());
+    }
+
+    /**
+     * Called once on the plan's thread when the connection ends, with the
+     * cause, or with {@code null} after {@link #close}.
+     */
+    void setOnDisconnect(Consumer<IOException> onDisconnect) {
+        this.onDisconnect = onDisconnect;
+    }
+
+    int getClientId() {
+        return clientId;
+    }
+
+    /** Sequence number of the last batch received. */
+    long getSequence() {
+        return sequence;
+    }
+
+    boolean isConnected() {
+        return channel != null && channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        if (channel != null) channel.close();
+        else lost(null);
+    }
+
+    private void planChanged(FloorPlan.Change change) {
+        if (applyingRemote || !joined) return;
+        send(PlanOps.encode(change));
+    }
+
+    private void send(List<byte[]> ops) {
+        if (ops.isEmpty()) return;
+        for (byte[] op : ops) {
+            if (PlanOps.type(op) == PlanOps.CLEAR) {
+                pendingClears++;
+            } else {
+                pending.merge(PlanOps.id(op), 1, Integer::sum);
+            }
+        }
+        ByteBuffer frame = ByteBuffer.allocate(5 + CollabServer.opsBytes(ops));
+        frame.putInt(frame.capacity() - 4).put(CollabServer.OPS);
+        CollabServer.putOps(frame, ops);
+        outbox.add(frame.flip());
+    }
+
+    private void writeLoop() {
+        try {
+            while (channel.isOpen()) {
+                ByteBuffer frame = outbox.take();
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (IOException e) {
+            lost(e);
+        } catch (InterruptedException e) {
+            // connection lost; the reader reports it
+        }
+    }
+
+    private void readLoop() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16))) {
+            while (true) {
+                int length = in.readInt();
+                byte kind = in.readByte();
+                if (kind == CollabServer.WELCOME && clientId == 0) {
+                    int id = in.readInt();
+                    int firstId = in.readInt();
+                    int idCount = in.readInt();
+                    long seq = in.readLong();
+                    List<byte[]> ops = readOps(in);
+                    clientId = id;
+                    sequence = seq;
+                    modelThread.execute(() -> join(firstId, idCount, ops));
+                } else if (kind == CollabServer.OPS) {
+                    long seq = in.readLong();
+                    int from = in.readInt();
+                    List<byte[]> ops = readOps(in);
+                    modelThread.execute(() -> received(from, ops));
+                    sequence = seq;
+                } else {
+                    throw new IOException("Unexpected frame kind " + kind + " of " + length + " bytes");
+                }
+            }
+        } catch (IOException e) {
+            lost(e);
+        }
+    }
+
+    private void lost(IOException cause) {
+        if (!lost.compareAndSet(false, true)) return;
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        if (writer != null) writer.interrupt();
+        IOException reported = closing ? null : cause;
+        modelThread.execute(() -> {
+            plan.removeListener(listener);
+            onDisconnect.accept(reported);
+        });
+    }
+
+    private static List<byte[]> readOps(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<byte[]> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] op = new byte[in.readInt()];
+            in.readFully(op);
+            ops.add(op);
+        }
+        return ops;
+    }
+
+    private void join(int firstId, int idCount, List<byte[]> ops) {
+        boolean share = ops.isEmpty() && !plan.isEmpty();
+        applyRemote(() -> {
+            if (!share) {
+                plan.clear();
+                for (byte[] op : ops) {
+                    put(op);
+                }
+            }
+            plan.setIdBlock(firstId, idCount);
+        });
+        joined = true;
+        plan.addListener(listener);
+        if (share) {
+            ArrayList<byte[]> all = new ArrayList<>(plan.size());
+            for (Room room : plan.rooms()) {
+                all.add(PlanOps.put(room));
+            }
+            send(all);
+        }
+    }
+
+    private void received(int from, List<byte[]> ops) {
+        if (from == clientId) {
+            for (byte[] op : ops) {
+                if (PlanOps.type(op) == PlanOps.CLEAR) {
+                    pendingClears--;
+                } else {
+                    pending.computeIfPresent(PlanOps.id(op), (id, n) -> n > 1 ? n - 1 : null);
+                }
+            }
+            return;
+        }
+        if (pendingClears > 0) return;
+        applyRemote(() -> {
+            for (byte[] op : ops) {
+                switch (PlanOps.type(op)) {
+                    case PlanOps.CLEAR:
+                        for (Room room : new ArrayList<>(plan.rooms())) {
+                            if (!pending.containsKey(room.id)) plan.remove(room.id);
+                        }
+                        break;
+                    case PlanOps.REMOVE:
+                        if (!pending.containsKey(PlanOps.id(op))) plan.remove(PlanOps.id(op));
+                        break;
+                    case PlanOps.PUT:
+                        if (!pending.containsKey(PlanOps.id(op))) put(op);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        });
+    }
+
+    private void put(byte[] op) {
+        Room room;
+        try {
+            room = PlanOps.room(op);
+        } catch (IOException e) {
+            return;
+        }
+        if (plan.get(room.id) != null) {
+            plan.update(room);
+        } else {
+            plan.add(room);
+        }
+    }
+
+    private void applyRemote(Runnable body) {
+        applyingRemote = true;
+        try {
+            untracked.accept(() -> plan.batch(body));
+        } finally {
+            applyingRemote = false;
+        }
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Relay for collaborative editing, run on one NIO selector thread. Clients
+ * send batches of {@link PlanOps} ops; the server stamps each batch with the
+ * next sequence number and sends it to every client, the sender included, so
+ * all clients see every batch in the same order and the later batch wins when
+ * two clients touch the same room. It keeps the current rooms as encoded ops
+ * to bring joining clients up to date.
+ *
+ * <p>Frames are {@code u32 length, u8 kind, body}:
+ * <pre>
+ *   client HELLO    (empty)
+ *   server WELCOME  u32 client id, u32 first id, u32 id count, u64 sequence, ops
+ *   client OPS      ops
+ *   server OPS      u64 sequence, u32 client id, ops
+ * </pre>
+ * where ops are {@code u32 count} followed by {@code u32 length, bytes} each.
+ * Every client gets its own block of room ids so rooms added concurrently
+ * never collide. A client that falls too far behind is disconnected. There
+ * is no authentication: anyone who can connect can edit, so bind to the
+ * loopback address unless the network is trusted.
+ */
+final class CollabServer implements Closeable {
+    static final int DEFAULT_PORT = 7421;
+    static final byte HELLO = 1;
+    static final byte WELCOME = 1;
+    static final byte OPS = 2;
+    static final int ID_BLOCK = 1 << 20;
+    static final int MAX_FRAME_BYTES = 16 << 20;
+    static final long MAX_QUEUED_BYTES = 64L << 20;
+    private static final int MAX_CLIENTS = Integer.MAX_VALUE / ID_BLOCK - 1;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final LinkedHashMap<Integer, byte[]> rooms = new LinkedHashMap<>();
+    private final ArrayList<Connection> connections = new ArrayList<>();
+    private final BitSet slots = new BitSet();
+    private Thread thread;
+    private volatile long sequence = 0;
+    private volatile int clientCount = 0;
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final int clientId;
+        ByteBuffer in = ByteBuffer.allocate(1 << 16);
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        long queued = 0;
+        boolean joined = false;
+
+        Connection(SocketChannel channel, int clientId) {
+            this.channel = channel;
+            this.clientId = clientId;
+        }
+    }
+
+    CollabServer(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getClientCount() {
+        return clientCount;
+    }
+
+    /** Starts serving on a daemon thread. */
+    void start() {
+        thread = new Thread(this::run, "collab-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        selector.close();
+        server.close();
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Connection c : connections) {
+            c.channel.close();
+        }
+    }
+
+    private void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) read(c);
+                        if (key.isValid() && key.isWritable()) flush(c);
+                    } catch (IOException | RuntimeException e) {
+                        disconnect(c);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // closed
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        int slot = slots.nextClearBit(1);
+        if (slot > MAX_CLIENTS) {
+            channel.close();
+            return;
+        }
+        slots.set(slot);
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection c = new Connection(channel, slot);
+        channel.register(selector, SelectionKey.OP_READ, c);
+        connections.add(c);
+        clientCount = connections.size();
+    }
+
+    private void disconnect(Connection c) {
+        SelectionKey key = c.channel.keyFor(selector);
+        if (key != null) key.cancel();
+        try {
+            c.channel.close();
+        } catch (IOException e) {
+            // already gone
+        }
+        if (connections.remove(c)) {
+            slots.clear(c.clientId);
+            clientCount = connections.size();
+        }
+    }
+
+    private void read(Connection c) throws IOException {
+        if (c.channel.read(c.in) < 0) {
+            disconnect(c);
+            return;
+        }
+        c.in.flip();
+        while (c.in.remaining() >= 5) {
+            int length = c.in.getInt(c.in.position());
+            if (length < 1 || length > MAX_FRAME_BYTES) {
+                throw new IOException("Bad frame length " + length);
+            }
+            if (c.in.remaining() < 4 + length) {
+                if (c.in.capacity() < 4 + length) {
+                    ByteBuffer bigger = ByteBuffer.allocate(Math.max(4 + length, c.in.capacity() * 2));
+                    bigger.put(c.in);
+                    c.in = bigger;
+                    return;
+                }
+                break;
+            }
+            c.in.getInt();
+            byte kind = c.in.get();
+            ByteBuffer body = c.in.slice();
+            body.limit(length - 1);
+            c.in.position(c.in.position() + length - 1);
+            frame(c, kind, body);
+            if (!c.channel.isOpen()) return;
+        }
+        c.in.compact();
+    }
+
+    private void frame(Connection c, byte kind, ByteBuffer body) throws IOException {
+        if (kind == HELLO && !c.joined) {
+            c.joined = true;
+            ByteBuffer welcome = ByteBuffer.allocate(4 + 1 + 4 + 4 + 4 + 8 + opsBytes(rooms.values()));
+            welcome.putInt(welcome.capacity() - 4).put(WELCOME)
+                    .putInt(c.clientId).putInt(c.clientId * ID_BLOCK).putInt(ID_BLOCK).putLong(sequence);
+            putOps(welcome, rooms.values());
+            send(c, welcome.flip());
+        } else if (kind == OPS && c.joined) {
+            int count = body.getInt(0);
+            int pos = 4;
+            for (int i = 0; i < count; i++) {
+                int length = body.getInt(pos);
+                byte[] op = new byte[length];
+                body.get(pos + 4, op);
+                pos += 4 + length;
+                switch (PlanOps.type(op)) {
+                    case PlanOps.CLEAR:
+                        rooms.clear();
+                        break;
+                    case PlanOps.REMOVE:
+                        rooms.remove(PlanOps.id(op));
+                        break;
+                    case PlanOps.PUT:
+                        rooms.put(PlanOps.id(op), op);
+                        break;
+                    default:
+                        throw new IOException("Unknown op type " + PlanOps.type(op));
+                }
+            }
+            ByteBuffer frame = ByteBuffer.allocate(4 + 1 + 8 + 4 + body.limit());
+            frame.putInt(frame.capacity() - 4).put(OPS).putLong(++sequence).putInt(c.clientId).put(body.rewind());
+            frame.flip();
+            for (Connection other : new ArrayList<>(connections)) {
+                if (other.joined) send(other, frame.duplicate());
+            }
+        } else {
+            throw new IOException("Unexpected frame kind " + kind);
+        }
+    }
+
+    /** Queues a frame and writes as much as the socket takes right away. */
+    private void send(Connection c, ByteBuffer frame) {
+        c.out.add(frame);
+        c.queued += frame.remaining();
+        if (c.queued > MAX_QUEUED_BYTES) {
+            disconnect(c);
+            return;
+        }
+        try {
+            flush(c);
+        } catch (IOException e) {
+            disconnect(c);
+        }
+    }
+
+    private void flush(Connection c) throws IOException {
+        while (!c.out.isEmpty()) {
+            ByteBuffer head = c.out.peek();
+            c.queued -= c.channel.write(head);
+            if (head.hasRemaining()) break;
+            c.out.poll();
+        }
+        SelectionKey key = c.channel.keyFor(selector);
+        if (key != null && key.isValid()) {
+            key.interestOps(c.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    static int opsBytes(Iterable<byte[]> ops) {
+        int size = 4;
+        for (byte[] op : ops) size += 4 + op.length;
+        return size;
+    }
+
+    static void putOps(ByteBuffer buffer, Collection<byte[]> ops) {
+        buffer.putInt(ops.size());
+        for (byte[] op : ops) {
+            buffer.putInt(op.length).put(op);
+        }
+    }
+}
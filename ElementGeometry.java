@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+/**
+ * Immutable set of rectangles inside a room, stored as packed
+ * {@code x, y, width, height} ints rather than one object per element.
+ * Doors and windows use it untyped; furniture also records a
+ * {@link FurnitureType} id per element. Intersection tests walk the array
+ * directly and allocate nothing.
+ */
+final class ElementGeometry {
+    static final ElementGeometry EMPTY = new ElementGeometry(new int[0], null);
+    static final int STRIDE = 4;
+
+    private final int[] rects;
+    private final int[] kinds;
+
+    private ElementGeometry(int[] rects, int[] kinds) {
+        this.rects = rects;
+        this.kinds = kinds;
+    }
+
+    /**
+     * Wraps arrays the caller hands over and will not modify again.
+     *
+     * @param rects  {@code x, y, width, height} per element
+     * @param kinds  furniture type id per element, or {@code null} for openings
+     */
+    static ElementGeometry wrap(int[] rects, int[] kinds) {
+        if (rects.length % STRIDE != 0 || (kinds != null && kinds.length * STRIDE != rects.length)) {
+            throw new IllegalArgumentException("rects and kinds do not describe the same elements");
+        }
+        return rects.length == 0 ? EMPTY : new ElementGeometry(rects, kinds);
+    }
+
+    int size() {
+        return rects.length / STRIDE;
+    }
+
+    boolean isEmpty() {
+        return rects.length == 0;
+    }
+
+    int x(int i) {
+        return rects[i * STRIDE];
+    }
+
+    int y(int i) {
+        return rects[i * STRIDE + 1];
+    }
+
+    int width(int i) {
+        return rects[i * STRIDE + 2];
+    }
+
+    int height(int i) {
+        return rects[i * STRIDE + 3];
+    }
+
+    /** Furniture type of element {@code i}; only valid for furniture. */
+    FurnitureType type(int i) {
+        return FurnitureType.byId(kinds[i]);
+    }
+
+    /** A copy with one untyped element appended. */
+    ElementGeometry with(int x, int y, int width, int height) {
+        return new ElementGeometry(append(x, y, width, height), null);
+    }
+
+    /** A copy with one piece of furniture appended. */
+    ElementGeometry with(FurnitureType type, int x, int y, int width, int height) {
+        int[] nextKinds = kinds == null ? new int[1] : Arrays.copyOf(kinds, kinds.length + 1);
+        nextKinds[nextKinds.length - 1] = type.id;
+        return new ElementGeometry(append(x, y, width, height), nextKinds);
+    }
+
+    private int[] append(int x, int y, int width, int height) {
+        int[] next = Arrays.copyOf(rects, rects.length + STRIDE);
+        next[rects.length] = x;
+        next[rects.length + 1] = y;
+        next[rects.length + 2] = width;
+        next[rects.length + 3] = height;
+        return next;
+    }
+
+    /** True if any element intersects the given rectangle, with {@link java.awt.Rectangle#intersects} semantics. */
+    boolean intersectsAny(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) return false;
+        int x1 = x + width, y1 = y + height;
+        int[] r = rects;
+        for (int o = 0; o < r.length; o += STRIDE) {
+            int w = r[o + 2], h = r[o + 3];
+            if (w > 0 && h > 0 && r[o] < x1 && r[o + 1] < y1 && r[o] + w > x && r[o + 1] + h > y) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Rough heap footprint, for undo history accounting. */
+    long estimateBytes() {
+        return 32 + 4L * rects.length + (kinds == null ? 0 : 16 + 4L * kinds.length);
+    }
+}
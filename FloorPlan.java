@@ -0,0 +1,393 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Headless floor-plan model. Rooms are kept in paint order (last is topmost)
+ * and mirrored in a {@link SpatialIndex} for overlap and hit queries. It has
+ * no dependency on Swing components and can be used without a display.
+ *
+ * <p>The plan belongs to one thread. Every committed change also publishes an
+ * immutable {@link PlanSnapshot}, which other threads may read at any time.
+ */
+final class FloorPlan {
+    static final int GRID_SPACING = 20;
+
+    private final LinkedHashMap<Integer, Room> rooms = new LinkedHashMap<>();
+    private final SpatialIndex<Integer> index = new SpatialIndex<>(GRID_SPACING * 8);
+    private final LinkedHashSet<Integer> unindexed = new LinkedHashSet<>();
+    private final ArrayList<Listener> listeners = new ArrayList<>();
+    private int nextId = 1;
+    private int idBlockStart = 1;
+    private int idBlockEnd = Integer.MAX_VALUE;
+    private long version = 0;
+    private volatile PlanSnapshot snapshot = PlanSnapshot.EMPTY;
+    private final LinkedHashSet<Integer> raised = new LinkedHashSet<>();
+
+    private int batchDepth = 0;
+    private LinkedHashMap<Integer, Room[]> pending;
+    private boolean pendingClear;
+
+    interface Listener {
+        /** Called once per committed batch with the net effect of all its mutations. */
+        void planChanged(Change change);
+    }
+
+    /**
+     * Net effect of one committed batch. Each edit pairs a room's state before
+     * the batch with its state after it: {@code before} is null for an added
+     * room and {@code after} is null for a removed one. A batch is also the
+     * unit of undo.
+     */
+    static final class Change {
+        final List<Edit> edits;
+        final boolean cleared;
+
+        Change(List<Edit> edits, boolean cleared) {
+            this.edits = edits;
+            this.cleared = cleared;
+        }
+
+        boolean isEmpty() {
+            return edits.isEmpty() && !cleared;
+        }
+    }
+
+    static final class Edit {
+        final Room before, after;
+
+        Edit(Room before, Room after) {
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public int size() {
+        return rooms.size();
+    }
+
+    public boolean isEmpty() {
+        return rooms.isEmpty();
+    }
+
+    /** Number of changes committed so far; it moves before listeners hear of a change. */
+    public long getVersion() {
+        return version;
+    }
+
+    public Room get(int id) {
+        return rooms.get(id);
+    }
+
+    /**
+     * The rooms as of the last committed change. Unlike {@link #rooms()} it
+     * may be called from any thread and the result never changes.
+     */
+    public PlanSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /** Rooms in paint order, bottom first. The view is live and must not be modified. */
+    public Collection<Room> rooms() {
+        return Collections.unmodifiableCollection(rooms.values());
+    }
+
+    /**
+     * Starts a batch. Mutations made until the matching {@link #commitBatch()}
+     * are applied to the model immediately but reach the spatial index and the
+     * listeners only once, as a single {@link Change}. Batches nest; only the
+     * outermost commit publishes.
+     */
+    public void beginBatch() {
+        if (batchDepth++ == 0) {
+            pending = new LinkedHashMap<>();
+            pendingClear = false;
+        }
+    }
+
+    public void commitBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("commitBatch without beginBatch");
+        }
+        if (--batchDepth > 0) return;
+
+        ArrayList<Edit> edits = new ArrayList<>(pending.size());
+        for (Room[] e : pending.values()) {
+            if (e[0] != e[1]) edits.add(new Edit(e[0], e[1]));
+        }
+        Change change = new Change(Collections.unmodifiableList(edits), pendingClear);
+        pending = null;
+        PlanMetrics.MutationEvent event = new PlanMetrics.MutationEvent();
+        event.begin();
+        syncIndex();
+        if (!change.isEmpty()) {
+            version++;
+            publish(change);
+            for (Listener l : listeners) l.planChanged(change);
+            PlanMetrics.get().recordMutations(edits.size());
+            event.edits = edits.size();
+            event.cleared = change.cleared;
+            event.commit();
+        } else if (!raised.isEmpty()) {
+            publish(null);
+        }
+    }
+
+    /** Runs {@code body} as one batch. */
+    public void batch(Runnable body) {
+        beginBatch();
+        try {
+            body.run();
+        } finally {
+            commitBatch();
+        }
+    }
+
+    public boolean isInBatch() {
+        return batchDepth > 0;
+    }
+
+    private void record(int id, Room before, Room after) {
+        Room[] e = pending.get(id);
+        if (e == null) {
+            pending.put(id, new Room[]{before, after});
+        } else {
+            e[1] = after;
+        }
+        unindexed.add(id);
+    }
+
+    /**
+     * Derives the next snapshot from the last one. {@code change} is null when
+     * only the paint order moved. After a clear the snapshot is rebuilt.
+     */
+    private void publish(Change change) {
+        if (change != null && !change.cleared && raised.isEmpty() && change.edits.size() == 1
+                && change.edits.get(0).before != null && change.edits.get(0).after != null) {
+            snapshot = snapshot.replace(change.edits.get(0).after, version);
+            return;
+        }
+        PlanSnapshot.Builder next;
+        if (change != null && change.cleared) {
+            next = PlanSnapshot.EMPTY.builder();
+            for (Room room : rooms.values()) {
+                next.put(room);
+            }
+        } else {
+            next = snapshot.builder();
+            for (int i = 0, n = change == null ? 0 : change.edits.size(); i < n; i++) {
+                Edit e = change.edits.get(i);
+                if (e.after == null) {
+                    next.remove(e.before.id);
+                } else {
+                    next.put(e.after);
+                }
+            }
+            for (Integer id : raised) {
+                if (rooms.containsKey(id)) next.toFront(id);
+            }
+        }
+        raised.clear();
+        snapshot = next.build(version);
+    }
+
+    /** Notes that a room moved to the top, for the next snapshot. */
+    private void raise(int id) {
+        raised.remove(id);
+        raised.add(id);
+    }
+
+    private void syncIndex() {
+        for (Integer id : unindexed) {
+            Room room = rooms.get(id);
+            if (room == null) {
+                index.remove(id);
+            } else {
+                index.update(id, room.x, room.y, room.width, room.height);
+            }
+        }
+        unindexed.clear();
+    }
+
+    /**
+     * Adds a room and returns the stored instance. A room with id 0 is given a
+     * fresh id; a positive id is kept so removed rooms can be restored as-is.
+     */
+    public Room add(Room room) {
+        Room stored = room;
+        if (room.id <= 0) {
+            if (nextId >= idBlockEnd) {
+                throw new IllegalStateException("Room id block exhausted");
+            }
+            stored = room.withId(nextId++);
+        } else if (rooms.containsKey(room.id)) {
+            throw new IllegalArgumentException("Duplicate room id " + room.id);
+        } else if (room.id >= idBlockStart && room.id < idBlockEnd) {
+            nextId = Math.max(nextId, room.id + 1);
+        }
+        beginBatch();
+        try {
+            rooms.put(stored.id, stored);
+            record(stored.id, null, stored);
+            raise(stored.id);
+        } finally {
+            commitBatch();
+        }
+        return stored;
+    }
+
+    /**
+     * Hands out fresh ids from {@code [first, first + count)} only, so that
+     * several editors sharing one plan never pick the same id. Rooms added
+     * with an id inside the block move the next fresh id past it.
+     */
+    public void setIdBlock(int first, int count) {
+        idBlockStart = first;
+        idBlockEnd = (int) Math.min(Integer.MAX_VALUE, (long) first + count);
+        nextId = first;
+        for (Integer id : rooms.keySet()) {
+            if (id >= idBlockStart && id < idBlockEnd) nextId = Math.max(nextId, id + 1);
+        }
+    }
+
+    /** Replaces the room with the same id, keeping its paint order. */
+    public Room update(Room room) {
+        Room before = rooms.get(room.id);
+        if (before == null) {
+            throw new IllegalArgumentException("Unknown room id " + room.id);
+        }
+        if (before == room) {
+            return room;
+        }
+        beginBatch();
+        try {
+            rooms.put(room.id, room);
+            record(room.id, before, room);
+        } finally {
+            commitBatch();
+        }
+        return room;
+    }
+
+    public Room remove(int id) {
+        Room removed = rooms.get(id);
+        if (removed != null) {
+            beginBatch();
+            try {
+                rooms.remove(id);
+                record(id, removed, null);
+            } finally {
+                commitBatch();
+            }
+        }
+        return removed;
+    }
+
+    public void clear() {
+        beginBatch();
+        try {
+            for (Room room : rooms.values()) {
+                record(room.id, room, null);
+            }
+            rooms.clear();
+            index.clear();
+            unindexed.clear();
+            pendingClear = true;
+        } finally {
+            commitBatch();
+        }
+    }
+
+    public void bringToFront(int id) {
+        Room room = rooms.remove(id);
+        if (room != null) {
+            rooms.put(id, room);
+            raise(id);
+            if (batchDepth == 0) publish(null);
+        }
+    }
+
+    /** Topmost room containing the point, or {@code null}. */
+    public Room roomAt(int px, int py) {
+        syncIndex();
+        ArrayList<Integer> hits = new ArrayList<>(2);
+        index.query(px, py, 1, 1, hits::add);
+        if (hits.isEmpty()) return null;
+        if (hits.size() == 1) return rooms.get(hits.get(0));
+        Room top = null;
+        for (Room room : rooms.values()) {
+            if (hits.contains(room.id)) top = room;
+        }
+        return top;
+    }
+
+    public boolean isAreaOccupied(int x, int y, int width, int height, int ignoreId) {
+        syncIndex();
+        PlanMetrics.OverlapQueryEvent event = new PlanMetrics.OverlapQueryEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean found = index.findIntersecting(x, y, width, height, ignoreId) != null;
+        PlanMetrics.get().recordOverlapQuery(System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.found = found;
+            event.commit();
+        }
+        return found;
+    }
+
+    public boolean overlapsAnother(Room room) {
+        return isAreaOccupied(room.x, room.y, room.width, room.height, room.id);
+    }
+
+    public void query(int x, int y, int width, int height, Consumer<Room> action) {
+        syncIndex();
+        index.query(x, y, width, height, id -> action.accept(rooms.get(id)));
+    }
+
+    public Room snapToGrid(int id) {
+        Room room = rooms.get(id);
+        int newX = Math.round((float) room.x / GRID_SPACING) * GRID_SPACING;
+        int newY = Math.round((float) room.y / GRID_SPACING) * GRID_SPACING;
+        return update(room.withLocation(newX, newY));
+    }
+
+    /**
+     * Moves an overlapping room next to the first neighbour that has a free
+     * spot on its east, west, south or north side. Leaves the room in place if
+     * none is free.
+     */
+    public Room autoAdjustPosition(int id) {
+        Room room = rooms.get(id);
+        ArrayList<Room> neighbours = new ArrayList<>();
+        query(room.x, room.y, room.width, room.height, other -> {
+            if (other.id != id) neighbours.add(other);
+        });
+
+        for (Room other : neighbours) {
+            int[][] candidates = {
+                    {other.x + other.width + GRID_SPACING, other.y},
+                    {other.x - room.width - GRID_SPACING, other.y},
+                    {other.x, other.y + other.height + GRID_SPACING},
+                    {other.x, other.y - room.height - GRID_SPACING}
+            };
+            for (int[] c : candidates) {
+                if (!isAreaOccupied(c[0], c[1], room.width, room.height, id)) {
+                    return update(room.withLocation(c[0], c[1]));
+                }
+            }
+        }
+        return room;
+    }
+}
@@ -0,0 +1,620 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single component that draws and hit-tests every room of a {@link FloorPlan}.
+ * Rooms are plain model values, so the canvas replaces the per-room panels,
+ * labels, borders and listeners the plan used to create.
+ *
+ * <p>The view is zoomable and pannable: model coordinates are mapped to the
+ * screen by a translate-then-scale {@link AffineTransform}. Zoom levels are
+ * whole pixel sizes of one grid cell, which keeps the cached grid aligned
+ * with the rooms at every level. When zoomed out, labels, furniture,
+ * openings and walls are dropped below fixed scale thresholds so that very
+ * large plans stay responsive. Rooms are drawn from a {@link RoomRenderCache},
+ * so a frame in which one room changed redraws only that room. Walls are not
+ * part of those rasters: they come from a {@link WallGraph} kept up to date
+ * with the plan and are stroked once per frame as one path, so a wall shared
+ * by two rooms is drawn once. Problems found
+ * by a {@link ValidationPipeline} can be laid over the rooms as annotations.
+ */
+class FloorPlanCanvas extends JPanel {
+    private static final int GRID_SPACING = FloorPlan.GRID_SPACING;
+    private static final int RESIZE_BORDER = 10;
+    private static final int MIN_ROOM_SIZE = 50;
+    private static final Color GRID_COLOR = new Color(0, 0, 128, 64);
+    private static final Stroke GRID_STROKE = new BasicStroke(0.5f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{2}, 0);
+    static final float WALL_THICKNESS = 2f;
+    private static final Stroke WALL_STROKE = new BasicStroke(WALL_THICKNESS);
+    static final Font LABEL_FONT = new Font("Arial", Font.BOLD, 14);
+    private static final int DIRTY_MARGIN = 2;
+    private static final int FULL_REPAINT_EDITS = 64;
+
+    private static final int[] ZOOM_CELL_SIZES = {2, 3, 4, 5, 6, 8, 10, 12, 15, 20, 25, 30, 40, 50, 60, 80, 100};
+    private static final int DEFAULT_ZOOM = 9;
+    private static final int GRID_MIN_CELL = 5;
+    private static final double LABEL_MIN_SCALE = 0.5;
+    private static final double FURNITURE_MIN_SCALE = 0.3;
+    private static final double OPENING_MIN_SCALE = 0.2;
+    static final double WALL_MIN_SCALE = 0.15;
+    static final double ANTIALIAS_MIN_SCALE = 0.5;
+    private static final int HUD_REFRESH_MILLIS = 250;
+    private static final Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color HUD_BACKGROUND = new Color(0, 0, 0, 160);
+    private static final Color ANNOTATION_FILL = new Color(255, 0, 0, 48);
+    private static final Color ANNOTATION_COLOR = new Color(220, 0, 0);
+
+    private final GridLayer gridLayer = new GridLayer(this);
+    private final FrameTimer frameTimer = new FrameTimer(120);
+    private final RoomRenderCache renderCache = new RoomRenderCache(
+            Long.getLong("floorplanner.renderCacheMB", RoomRenderCache.DEFAULT_BUDGET_BYTES >> 20) << 20);
+
+    private final FloorPlan plan;
+    private final WallGraph walls;
+    private boolean gridVisible = true;
+    private final Rectangle hudBounds = new Rectangle(8, 8, 260, 22);
+    private final Timer hudTimer = new Timer(HUD_REFRESH_MILLIS, e -> repaint(hudBounds));
+    private int selectedId = 0;
+    private List<PlanValidator.Problem> annotations = Collections.emptyList();
+
+    private int dragId = 0;
+    private int dragOffsetX, dragOffsetY;
+    private int resizeEdge = 0;
+
+    private int zoom = DEFAULT_ZOOM;
+    private int panX = 0, panY = 0;
+    private boolean panning = false;
+    private int panLastX, panLastY;
+
+    FloorPlanCanvas(FloorPlan plan) {
+        this.plan = plan;
+        this.walls = WallGraph.of(plan.rooms());
+        setBackground(Color.WHITE);
+        setDoubleBuffered(true);
+
+        plan.addListener(this::planChanged);
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                onPress(e);
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                onDrag(e);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                onRelease();
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                updateCursor(e.getX(), e.getY());
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                setCursor(Cursor.getDefaultCursor());
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoomAt(e.getX(), e.getY(), -e.getWheelRotation());
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    private void planChanged(FloorPlan.Change change) {
+        walls.apply(change, plan.rooms());
+        if (change.cleared) {
+            renderCache.clear();
+        }
+        if (change.cleared || change.edits.size() > FULL_REPAINT_EDITS) {
+            for (FloorPlan.Edit edit : change.edits) {
+                forgetIfRemoved(edit);
+            }
+            repaint();
+            return;
+        }
+        for (FloorPlan.Edit edit : change.edits) {
+            forgetIfRemoved(edit);
+            Room before = edit.before, after = edit.after;
+            if (before == null || after == null) {
+                repaintRoom(before == null ? after : before);
+                continue;
+            }
+            int x0 = Math.min(before.x, after.x);
+            int y0 = Math.min(before.y, after.y);
+            int x1 = Math.max(before.x + before.width, after.x + after.width);
+            int y1 = Math.max(before.y + before.height, after.y + after.height);
+            repaintArea(x0, y0, x1 - x0, y1 - y0);
+        }
+    }
+
+    private void forgetIfRemoved(FloorPlan.Edit edit) {
+        if (edit.after == null) {
+            renderCache.remove(edit.before.id);
+            if (edit.before.id == selectedId) selectedId = 0;
+            if (edit.before.id == dragId) {
+                dragId = 0;
+                firePropertyChange("dragging", true, false);
+            }
+        }
+    }
+
+    public FloorPlan getPlan() {
+        return plan;
+    }
+
+    public WallGraph getWallGraph() {
+        return walls;
+    }
+
+    public FrameTimer getFrameTimer() {
+        return frameTimer;
+    }
+
+    public RoomRenderCache getRenderCache() {
+        return renderCache;
+    }
+
+    public boolean isGridVisible() {
+        return gridVisible;
+    }
+
+    public void setGridVisible(boolean visible) {
+        gridVisible = visible;
+        repaint();
+    }
+
+    public boolean isHudVisible() {
+        return hudTimer.isRunning();
+    }
+
+    /**
+     * Shows FPS and p50/p99 frame times in the top-left corner. The overlay
+     * refreshes itself a few times a second; those small repaints are left
+     * out of the statistics so the numbers describe real frames only.
+     */
+    public void setHudVisible(boolean visible) {
+        if (visible) {
+            hudTimer.start();
+        } else {
+            hudTimer.stop();
+        }
+        repaint(hudBounds);
+    }
+
+    public List<PlanValidator.Problem> getAnnotations() {
+        return annotations;
+    }
+
+    /**
+     * Outlines each problem's area over the rooms, replacing earlier
+     * annotations. Hovering an outline shows the problem as a tool tip.
+     */
+    public void setAnnotations(List<PlanValidator.Problem> problems) {
+        if (problems.isEmpty() && annotations.isEmpty()) return;
+        annotations = problems;
+        setToolTipText(problems.isEmpty() ? null : "");
+        repaint();
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int mx = toModelX(e.getX()), my = toModelY(e.getY());
+        for (PlanValidator.Problem p : annotations) {
+            if (mx >= p.x && my >= p.y && mx <= p.x + p.width && my <= p.y + p.height) return p.message;
+        }
+        return null;
+    }
+
+    /** The selected room as currently stored in the plan, or {@code null}. */
+    public Room getSelectedRoom() {
+        return selectedId == 0 ? null : plan.get(selectedId);
+    }
+
+    public void clearSelection() {
+        select(0);
+    }
+
+    private void select(int id) {
+        if (id == selectedId) return;
+        repaintRoom(plan.get(selectedId));
+        selectedId = id;
+        repaintRoom(plan.get(id));
+    }
+
+    private void repaintRoom(Room room) {
+        if (room != null) {
+            repaintArea(room.x, room.y, room.width, room.height);
+        }
+    }
+
+    /**
+     * Marks a model area dirty, with room for the walls along its edges.
+     * Swing's repaint manager unions pending regions, so a drag only repaints
+     * the old and new bounds of the moving room.
+     */
+    private void repaintArea(int x, int y, int width, int height) {
+        double scale = getScale();
+        int margin = DIRTY_MARGIN + (int) Math.ceil(scale);
+        int sx0 = (int) Math.floor(x * scale) + panX;
+        int sy0 = (int) Math.floor(y * scale) + panY;
+        int sx1 = (int) Math.ceil((x + width) * scale) + panX;
+        int sy1 = (int) Math.ceil((y + height) * scale) + panY;
+        repaint(sx0 - margin, sy0 - margin, sx1 - sx0 + 2 * margin, sy1 - sy0 + 2 * margin);
+    }
+
+    /** Screen pixels per model unit. */
+    public double getScale() {
+        return (double) ZOOM_CELL_SIZES[zoom] / GRID_SPACING;
+    }
+
+    public void zoomIn() {
+        zoomAt(getWidth() / 2, getHeight() / 2, 1);
+    }
+
+    public void zoomOut() {
+        zoomAt(getWidth() / 2, getHeight() / 2, -1);
+    }
+
+    /** Changes zoom by {@code steps} levels, keeping the model point under the given screen point fixed. */
+    public void zoomAt(int sx, int sy, int steps) {
+        int next = Math.max(0, Math.min(ZOOM_CELL_SIZES.length - 1, zoom + steps));
+        if (next == zoom) return;
+        double modelX = (sx - panX) / getScale();
+        double modelY = (sy - panY) / getScale();
+        zoom = next;
+        panX = (int) Math.round(sx - modelX * getScale());
+        panY = (int) Math.round(sy - modelY * getScale());
+        repaint();
+    }
+
+    /** Picks the largest zoom level at which every room is visible and centres the plan. */
+    public void zoomToFit() {
+        if (plan.isEmpty() || getWidth() <= 0 || getHeight() <= 0) {
+            zoom = DEFAULT_ZOOM;
+            panX = panY = 0;
+            repaint();
+            return;
+        }
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (Room room : plan.rooms()) {
+            minX = Math.min(minX, room.x);
+            minY = Math.min(minY, room.y);
+            maxX = Math.max(maxX, room.x + room.width);
+            maxY = Math.max(maxY, room.y + room.height);
+        }
+        int margin = 2 * GRID_SPACING;
+        zoom = 0;
+        for (int i = ZOOM_CELL_SIZES.length - 1; i >= 0; i--) {
+            double scale = (double) ZOOM_CELL_SIZES[i] / GRID_SPACING;
+            if ((maxX - minX + 2 * margin) * scale <= getWidth() && (maxY - minY + 2 * margin) * scale <= getHeight()) {
+                zoom = i;
+                break;
+            }
+        }
+        double scale = getScale();
+        panX = (int) Math.round(getWidth() / 2.0 - (minX + maxX) / 2.0 * scale);
+        panY = (int) Math.round(getHeight() / 2.0 - (minY + maxY) / 2.0 * scale);
+        repaint();
+    }
+
+    private int toModelX(int sx) {
+        return (int) Math.floor((sx - panX) / getScale());
+    }
+
+    private int toModelY(int sy) {
+        return (int) Math.floor((sy - panY) / getScale());
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2d = (Graphics2D) g;
+        Rectangle clip = g2d.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        // A HUD refresh repaints only the HUD's corner and is not timed as a frame.
+        boolean hudVisible = isHudVisible();
+        boolean frame = !(hudVisible && hudBounds.contains(clip));
+        PlanMetrics.FrameEvent event = null;
+        if (frame) {
+            frameTimer.begin();
+            event = new PlanMetrics.FrameEvent();
+            event.begin();
+        }
+        int cell = ZOOM_CELL_SIZES[zoom];
+        if (gridVisible && cell >= GRID_MIN_CELL) {
+            gridLayer.paint(g2d, getWidth(), getHeight(), getBackground(), cell, panX, panY);
+        } else {
+            super.paintComponent(g);
+        }
+
+        double scale = getScale();
+        int mx0 = (int) Math.floor((clip.x - panX) / scale);
+        int my0 = (int) Math.floor((clip.y - panY) / scale);
+        int mx1 = (int) Math.ceil((clip.x + clip.width - panX) / scale);
+        int my1 = (int) Math.ceil((clip.y + clip.height - panY) / scale);
+
+        AffineTransform saved = g2d.getTransform();
+        g2d.translate(panX, panY);
+        g2d.scale(scale, scale);
+        boolean antialias = scale >= ANTIALIAS_MIN_SCALE;
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialias
+                ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        boolean cached = scale >= WALL_MIN_SCALE;
+        double deviceScale = scale * Math.max(Math.abs(saved.getScaleX()), 1e-3);
+        renderCache.beginFrame();
+        int painted = 0;
+        for (Room room : plan.rooms()) {
+            if (!room.intersects(mx0, my0, mx1 - mx0, my1 - my0)) continue;
+            painted++;
+            boolean selected = room.id == selectedId;
+            Image image = cached && !selected ? renderCache.get(room, deviceScale, antialias) : null;
+            if (image != null) {
+                g2d.drawImage(image, room.x, room.y, room.width, room.height, null);
+            } else {
+                paintRoom(g2d, room, selected, scale, false);
+            }
+        }
+        if (scale >= WALL_MIN_SCALE) {
+            paintWalls(g2d, walls, mx0 - 1, my0 - 1, mx1 - mx0 + 2, my1 - my0 + 2);
+        }
+        paintAnnotations(g2d, mx0, my0, mx1 - mx0, my1 - my0, scale);
+        g2d.setTransform(saved);
+
+        if (hudVisible && hudBounds.intersects(clip)) {
+            paintHud(g2d);
+        }
+        if (!frame) return;
+        long elapsed = frameTimer.end();
+        PlanMetrics.get().recordFrame(System.nanoTime() - elapsed, elapsed, painted);
+        event.rooms = painted;
+        event.commit();
+    }
+
+    private void paintAnnotations(Graphics2D g2d, int x, int y, int width, int height, double scale) {
+        if (annotations.isEmpty()) return;
+        Stroke oldStroke = g2d.getStroke();
+        g2d.setStroke(new BasicStroke((float) (2 / scale), BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10,
+                new float[]{(float) (6 / scale), (float) (4 / scale)}, 0));
+        for (PlanValidator.Problem p : annotations) {
+            if (!SpatialIndex.intersects(x, y, width, height, p.x - 1, p.y - 1, p.width + 2, p.height + 2)) continue;
+            g2d.setColor(ANNOTATION_FILL);
+            g2d.fillRect(p.x, p.y, p.width, p.height);
+            g2d.setColor(ANNOTATION_COLOR);
+            g2d.drawRect(p.x, p.y, p.width, p.height);
+        }
+        g2d.setStroke(oldStroke);
+    }
+
+    private void paintHud(Graphics2D g2d) {
+        String text = String.format("%3d fps  p50 %5.1f ms  p99 %5.1f ms",
+                frameTimer.framesPerSecond(), frameTimer.percentileMillis(0.50), frameTimer.percentileMillis(0.99));
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setColor(HUD_BACKGROUND);
+        g2d.fillRect(hudBounds.x, hudBounds.y, hudBounds.width, hudBounds.height);
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(HUD_FONT);
+        g2d.drawString(text, hudBounds.x + 6, hudBounds.y + 15);
+    }
+
+    /** Draws grid lines every {@code spacing} pixels, starting at 0, over the given area. */
+    static void paintGrid(Graphics2D g2d, int spacing, int width, int height) {
+        Stroke oldStroke = g2d.getStroke();
+        g2d.setColor(GRID_COLOR);
+        g2d.setStroke(GRID_STROKE);
+        for (int x = 0; x < width; x += spacing) {
+            g2d.drawLine(x, 0, x, height);
+        }
+        for (int y = 0; y < height; y += spacing) {
+            g2d.drawLine(0, y, width, y);
+        }
+        g2d.setStroke(oldStroke);
+    }
+
+    /**
+     * Fills the walls touching the given model area as a single path. Walls
+     * are axis-aligned, so they are filled without antialiasing, which is
+     * several times cheaper for one large path, and kept at least one device
+     * pixel thick so that they do not drop out when zoomed out.
+     */
+    static void paintWalls(Graphics2D g2d, WallGraph walls, int x, int y, int width, int height) {
+        Object antialias = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        double deviceScale = Math.max(Math.abs(g2d.getTransform().getScaleX()), 1e-3);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        g2d.setColor(Color.BLACK);
+        g2d.fill(walls.wallPath(x, y, width, height, (float) Math.max(WALL_THICKNESS, 1 / deviceScale)));
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialias);
+    }
+
+    /** Draws one room the way a room panel used to look: fill, contents, wall border and centred label. */
+    static void paintRoom(Graphics2D g2d, Room room, boolean selected) {
+        paintRoom(g2d, room, selected, 1.0);
+    }
+
+    /**
+     * Draws one room in model coordinates, leaving out detail that would be
+     * smaller than a few pixels at the given scale.
+     */
+    static void paintRoom(Graphics2D g2d, Room room, boolean selected, double scale) {
+        paintRoom(g2d, room, selected, scale, true);
+    }
+
+    /**
+     * Draws one room, with its own wall border only if {@code walls} is set;
+     * otherwise the walls are left to {@link #paintWalls}.
+     */
+    static void paintRoom(Graphics2D g2d, Room room, boolean selected, double scale, boolean walls) {
+        if (scale < WALL_MIN_SCALE) {
+            g2d.setColor(new Color(room.color, true));
+            g2d.fillRect(room.x, room.y, room.width, room.height);
+            return;
+        }
+        Graphics2D g = (Graphics2D) g2d.create(room.x, room.y, room.width, room.height);
+        try {
+            g.setColor(new Color(room.color, true));
+            g.fillRect(0, 0, room.width, room.height);
+
+            if (selected) {
+                g.setColor(Color.BLACK);
+                g.fillRect(room.width - 8, room.height - 8, 8, 8);
+            }
+
+            if (scale >= OPENING_MIN_SCALE) {
+                g.setColor(Color.DARK_GRAY);
+                fillRects(g, room.doors);
+                g.setColor(Color.LIGHT_GRAY);
+                fillRects(g, room.windows);
+            }
+
+            ElementGeometry furniture = room.furniture;
+            for (int i = 0, n = scale >= FURNITURE_MIN_SCALE ? furniture.size() : 0; i < n; i++) {
+                furniture.type(i).paint(g, furniture.x(i), furniture.y(i), furniture.width(i), furniture.height(i));
+            }
+
+            if (walls) {
+                g.setColor(Color.BLACK);
+                g.setStroke(WALL_STROKE);
+                g.drawRect(1, 1, room.width - 2, room.height - 2);
+            }
+
+            if (scale < LABEL_MIN_SCALE) return;
+            g.setColor(Color.WHITE);
+            g.setFont(LABEL_FONT);
+            FontMetrics fm = g.getFontMetrics();
+            int textX = (room.width - fm.stringWidth(room.name)) / 2;
+            int textY = (room.height - fm.getHeight()) / 2 + fm.getAscent();
+            g.drawString(room.name, textX, textY);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static void fillRects(Graphics2D g, ElementGeometry rects) {
+        for (int i = 0; i < rects.size(); i++) {
+            g.fillRect(rects.x(i), rects.y(i), rects.width(i), rects.height(i));
+        }
+    }
+
+    private int edgeAt(Room room, int px, int py) {
+        int border = (int) Math.ceil(RESIZE_BORDER / getScale());
+        boolean right = px >= room.x + room.width - border;
+        boolean bottom = py >= room.y + room.height - border;
+        if (right && bottom) return 3;
+        if (right) return 1;
+        if (bottom) return 2;
+        return 0;
+    }
+
+    private void onPress(MouseEvent e) {
+        int mx = toModelX(e.getX()), my = toModelY(e.getY());
+        Room room = SwingUtilities.isLeftMouseButton(e) ? plan.roomAt(mx, my) : null;
+        if (room == null) {
+            panning = true;
+            panLastX = e.getX();
+            panLastY = e.getY();
+            setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+            return;
+        }
+
+        dragId = room.id;
+        dragOffsetX = mx - room.x;
+        dragOffsetY = my - room.y;
+        resizeEdge = edgeAt(room, mx, my);
+
+        plan.bringToFront(room.id);
+        select(room.id);
+        repaintRoom(room);
+        firePropertyChange("dragging", false, true);
+    }
+
+    private void onDrag(MouseEvent e) {
+        if (panning) {
+            panX += e.getX() - panLastX;
+            panY += e.getY() - panLastY;
+            panLastX = e.getX();
+            panLastY = e.getY();
+            repaint();
+            return;
+        }
+        if (dragId == 0) return;
+        Room room = plan.get(dragId);
+        int mx = toModelX(e.getX()), my = toModelY(e.getY());
+
+        if (resizeEdge != 0) {
+            int newWidth = room.width;
+            int newHeight = room.height;
+
+            if (resizeEdge == 1 || resizeEdge == 3) {
+                newWidth = Math.max(MIN_ROOM_SIZE, mx - room.x);
+            }
+            if (resizeEdge == 2 || resizeEdge == 3) {
+                newHeight = Math.max(MIN_ROOM_SIZE, my - room.y);
+            }
+
+            newWidth = Math.round((float) newWidth / GRID_SPACING) * GRID_SPACING;
+            newHeight = Math.round((float) newHeight / GRID_SPACING) * GRID_SPACING;
+
+            plan.update(room.withBounds(room.x, room.y, newWidth, newHeight));
+        } else {
+            plan.update(room.withLocation(mx - dragOffsetX, my - dragOffsetY));
+        }
+    }
+
+    private void onRelease() {
+        if (panning) {
+            panning = false;
+            setCursor(Cursor.getDefaultCursor());
+            return;
+        }
+        if (dragId == 0) return;
+        int id = dragId;
+        dragId = 0;
+        resizeEdge = 0;
+
+        plan.batch(() -> {
+            Room room = plan.snapToGrid(id);
+            if (plan.overlapsAnother(room)) {
+                plan.autoAdjustPosition(id);
+            }
+        });
+        firePropertyChange("dragging", true, false);
+    }
+
+    private void updateCursor(int sx, int sy) {
+        int px = toModelX(sx), py = toModelY(sy);
+        Room room = plan.roomAt(px, py);
+        if (room == null) {
+            setCursor(Cursor.getDefaultCursor());
+            return;
+        }
+        switch (edgeAt(room, px, py)) {
+            case 3:
+                setCursor(Cursor.getPredefinedCursor(Cursor.SE_RESIZE_CURSOR));
+                break;
+            case 1:
+                setCursor(Cursor.getPredefinedCursor(Cursor.E_RESIZE_CURSOR));
+                break;
+            case 2:
+                setCursor(Cursor.getPredefinedCursor(Cursor.S_RESIZE_CURSOR));
+                break;
+            default:
+                setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+        }
+    }
+}
@@ -2,17 +2,45 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.ArrayList;
-
-public class FloorPlanApp extends JFrame {
-    private JPanel floorPlanPanel;
-    private ArrayList<RoomPanel> rooms;
-    private static final int GRID_SPACING = 20;
-    private boolean isGridVisible = true;
-    private RoomPanel selectedRoom = null;
+import java.util.HashMap;
+import java.util.List;
+
+class FloorPlanApp extends JFrame {
+    private FloorPlanCanvas floorPlanPanel;
+    private final FloorPlan plan;
+    private final PlanHistory history;
+    private JButton undoButton;
+    private JButton redoButton;
+    private PlanAutosave autosave;
+    private final long floorBudget = Long.getLong("floorplanner.floorCacheMB", Building.DEFAULT_BUDGET_BYTES >> 20) << 20;
+    private Building building = new Building(floorBudget);
+    private int activeFloor = 0;
+    private boolean floorDirty = false;
+    private boolean switchingFloor = false;
+    private boolean updatingFloors = false;
+    private JComboBox<String> floorBox;
+    private JButton addFloorButton;
+    private JButton collabButton;
+    private CollabServer collabServer;
+    private CollabClient collabClient;
+    private ValidationPipeline validation;
+    private PlanStatistics statistics;
+    private JTextArea summary;
+    private boolean summaryPending = false;
+    private static final String[] ROOM_TYPES = {"Bedroom", "Bathroom", "Kitchen", "Living Room"};
+    private static final int GRID_SPACING = FloorPlan.GRID_SPACING;
 
     public FloorPlanApp() {
-        rooms = new ArrayList<>();
+        plan = new FloorPlan();
+        history = new PlanHistory(plan,
+                Long.getLong("floorplanner.undoBudgetMB", PlanHistory.DEFAULT_BUDGET_BYTES >> 20) << 20,
+                Integer.getInteger("floorplanner.undoLimit", 100_000));
+
+        PlanMetrics.registerMBean();
 
         setTitle("2D Floor Planner");
         setSize(1000, 700);
@@ -26,6 +54,15 @@ public class FloorPlanApp extends JFrame {
         JButton clearButton = new JButton("Clear");
         JButton saveButton = new JButton("Save");
         JButton openButton = new JButton("Open Project");
+        JButton exportButton = new JButton("Export");
+        undoButton = new JButton("Undo");
+        redoButton = new JButton("Redo");
+        JButton zoomInButton = new JButton("+");
+        JButton zoomOutButton = new JButton("-");
+        JButton zoomFitButton = new JButton("Fit");
+        floorBox = new JComboBox<>();
+        addFloorButton = new JButton("Add Floor");
+        collabButton = new JButton("Collaborate");
 
         JLabel titleLabel = new JLabel("ALGORITHIM AVENGERS");
         titleLabel.setForeground(Color.WHITE);
@@ -34,6 +71,15 @@ public class FloorPlanApp extends JFrame {
         topNavBar.add(clearButton);
         topNavBar.add(saveButton);
         topNavBar.add(openButton);
+        topNavBar.add(exportButton);
+        topNavBar.add(undoButton);
+        topNavBar.add(redoButton);
+        topNavBar.add(zoomOutButton);
+        topNavBar.add(zoomInButton);
+        topNavBar.add(zoomFitButton);
+        topNavBar.add(floorBox);
+        topNavBar.add(addFloorButton);
+        topNavBar.add(collabButton);
         topNavBar.add(Box.createHorizontalStrut(150));
         topNavBar.add(titleLabel);
 
@@ -46,16 +92,23 @@ public class FloorPlanApp extends JFrame {
 
         JButton placeRoomButton = new JButton("Add Room");
         JButton toggleGridButton = new JButton("Show Grid");
+        JButton toggleHudButton = new JButton("Show HUD");
+        JButton toggleChecksButton = new JButton("Show Checks");
         JButton addDoorButton = new JButton("Add Door");
         JButton addWindowButton = new JButton("Add Window");
         JButton deleteRoomButton = new JButton("Delete Room");
         JButton addFurnitureButton = new JButton("Add Furniture");
+        JButton autoLayoutButton = new JButton("Auto Layout");
 
         sidePanel.add(Box.createVerticalStrut(20));
         sidePanel.add(placeRoomButton);
         sidePanel.add(Box.createVerticalStrut(20));
         sidePanel.add(toggleGridButton);
         sidePanel.add(Box.createVerticalStrut(20));
+        sidePanel.add(toggleHudButton);
+        sidePanel.add(Box.createVerticalStrut(20));
+        sidePanel.add(toggleChecksButton);
+        sidePanel.add(Box.createVerticalStrut(20));
         sidePanel.add(addDoorButton);
         sidePanel.add(Box.createVerticalStrut(20));
         sidePanel.add(addWindowButton);
@@ -63,56 +116,207 @@ public class FloorPlanApp extends JFrame {
         sidePanel.add(deleteRoomButton);
         sidePanel.add(Box.createVerticalStrut(20));
         sidePanel.add(addFurnitureButton);
+        sidePanel.add(Box.createVerticalStrut(20));
+        sidePanel.add(autoLayoutButton);
+        sidePanel.add(Box.createVerticalStrut(20));
+        summary = new JTextArea();
+        summary.setEditable(false);
+        summary.setBackground(Color.LIGHT_GRAY);
+        summary.setFont(summary.getFont().deriveFont(11f));
+        JScrollPane summaryScroll = new JScrollPane(summary);
+        summaryScroll.setBorder(BorderFactory.createTitledBorder("Summary"));
+        summaryScroll.setAlignmentX(Component.LEFT_ALIGNMENT);
+        summaryScroll.setPreferredSize(new Dimension(190, 260));
+        summaryScroll.setMaximumSize(new Dimension(200, Integer.MAX_VALUE));
+        sidePanel.add(summaryScroll);
 
         add(sidePanel, BorderLayout.WEST);
 
-        floorPlanPanel = new JPanel() {
-            @Override
-            protected void paintComponent(Graphics g) {
-                super.paintComponent(g);
-                Graphics2D g2d = (Graphics2D) g;
-
-                g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                        RenderingHints.VALUE_ANTIALIAS_ON);
-
-                if (isGridVisible) {
-                    g2d.setColor(new Color(0, 0, 128, 64));
-
-                    g2d.setStroke(new BasicStroke(0.5f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{2}, 0));
-                    for (int x = 0; x < getWidth(); x += GRID_SPACING) {
-                        g2d.drawLine(x, 0, x, getHeight());
-                    }
-                    for (int y = 0; y < getHeight(); y += GRID_SPACING) {
-                        g2d.drawLine(0, y, getWidth(), y);
-                    }
-                }
+        floorPlanPanel = new FloorPlanCanvas(plan);
+        floorPlanPanel.addPropertyChangeListener("dragging", e -> {
+            if (Boolean.TRUE.equals(e.getNewValue())) {
+                history.beginGroup();
+            } else {
+                history.endGroup();
             }
-        };
-        floorPlanPanel.setBackground(Color.WHITE);
-        floorPlanPanel.setLayout(null);
-        floorPlanPanel.setDoubleBuffered(true);
+        });
         add(floorPlanPanel, BorderLayout.CENTER);
+        validation = new ValidationPipeline(plan, SwingUtilities::invokeLater, floorPlanPanel::setAnnotations);
 
         projectButton.addActionListener(e -> createNewProject());
         clearButton.addActionListener(e -> clearRooms());
         saveButton.addActionListener(e -> saveToFile());
         openButton.addActionListener(e -> openFromFile());
+        exportButton.addActionListener(e -> exportToFile());
         placeRoomButton.addActionListener(e -> addRoomDialog());
         toggleGridButton.addActionListener(e -> {
-            isGridVisible = !isGridVisible;
-            toggleGridButton.setText(isGridVisible ? "Hide Grid" : "Show Grid");
-            floorPlanPanel.repaint();
+            floorPlanPanel.setGridVisible(!floorPlanPanel.isGridVisible());
+            toggleGridButton.setText(floorPlanPanel.isGridVisible() ? "Hide Grid" : "Show Grid");
+        });
+        toggleHudButton.addActionListener(e -> {
+            floorPlanPanel.setHudVisible(!floorPlanPanel.isHudVisible());
+            toggleHudButton.setText(floorPlanPanel.isHudVisible() ? "Hide HUD" : "Show HUD");
+        });
+        toggleChecksButton.addActionListener(e -> {
+            if (validation.isStarted()) {
+                validation.stop();
+            } else {
+                validation.start();
+            }
+            toggleChecksButton.setText(validation.isStarted() ? "Hide Checks" : "Show Checks");
         });
         addDoorButton.addActionListener(e -> addDoorDialog());
         addWindowButton.addActionListener(e -> addWindowDialog());
         deleteRoomButton.addActionListener(e -> deleteSelectedRoom());
         addFurnitureButton.addActionListener(e -> addFurnitureDialog());
+        autoLayoutButton.addActionListener(e -> autoLayout(autoLayoutButton));
+        undoButton.addActionListener(e -> undo());
+        redoButton.addActionListener(e -> redo());
+        zoomInButton.addActionListener(e -> floorPlanPanel.zoomIn());
+        zoomOutButton.addActionListener(e -> floorPlanPanel.zoomOut());
+        zoomFitButton.addActionListener(e -> floorPlanPanel.zoomToFit());
+        floorBox.addActionListener(e -> {
+            if (!updatingFloors) switchFloor(floorBox.getSelectedIndex());
+        });
+        addFloorButton.addActionListener(e -> addFloor());
+        collabButton.addActionListener(e -> toggleCollaboration());
+
+        JRootPane root = getRootPane();
+        int menuMask = Toolkit.getDefaultToolkit().getMenuShortcutKeyMaskEx();
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, menuMask), "undo");
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, menuMask), "redo");
+        root.getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undo();
+            }
+        });
+        root.getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redo();
+            }
+        });
+        plan.addListener(change -> SwingUtilities.invokeLater(this::updateUndoButtons));
+        plan.addListener(change -> {
+            if (!switchingFloor) floorDirty = true;
+        });
+        statistics = new PlanStatistics(plan, floorPlanPanel.getWallGraph());
+        plan.addListener(change -> scheduleSummary());
+        refreshSummary();
+        refreshFloors();
+        updateUndoButtons();
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (autosave != null) autosave.discard();
+                stopCollaboration();
+            }
+        });
 
         setVisible(true);
+        if (!"false".equals(System.getProperty("floorplanner.autosave"))) {
+            startAutosave(new File(System.getProperty("floorplanner.autosaveDir",
+                    System.getProperty("user.home") + File.separator + ".floorplanner")).toPath());
+        }
+    }
+
+    /**
+     * Offers to restore what an earlier session left in the autosave directory,
+     * then starts journaling the plan there. Reading and writing happen off the EDT.
+     */
+    private void startAutosave(Path dir) {
+        new SwingWorker<List<Room>, Void>() {
+            @Override
+            protected List<Room> doInBackground() throws IOException {
+                return PlanAutosave.hasSavedState(dir) ? PlanAutosave.recover(dir) : List.of();
+            }
+
+            @Override
+            protected void done() {
+                List<Room> recovered = List.of();
+                try {
+                    recovered = get();
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(FloorPlanApp.this, "Autosaved work could not be read.", "Autosave", JOptionPane.WARNING_MESSAGE);
+                }
+                if (!recovered.isEmpty() && JOptionPane.showConfirmDialog(FloorPlanApp.this,
+                        "Restore " + recovered.size() + " room(s) from a session that did not exit normally?",
+                        "Autosave", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                    plan.beginBatch();
+                    try {
+                        for (Room room : recovered) {
+                            plan.add(plan.get(room.id) == null ? room : room.withId(0));
+                        }
+                    } finally {
+                        plan.commitBatch();
+                    }
+                    history.discardAllEdits();
+                    updateUndoButtons();
+                }
+                autosave = new PlanAutosave(plan, dir, Long.getLong("floorplanner.autosaveCompactKB",
+                        PlanAutosave.DEFAULT_COMPACT_BYTES >> 10) << 10);
+            }
+        }.execute();
+    }
+
+    private void undo() {
+        if (history.canUndo()) {
+            history.undo();
+        }
+        updateUndoButtons();
+    }
+
+    private void redo() {
+        if (history.canRedo()) {
+            history.redo();
+        }
+        updateUndoButtons();
+    }
+
+    /** Refreshes the summary once after the current burst of changes, such as a drag. */
+    private void scheduleSummary() {
+        if (summaryPending) return;
+        summaryPending = true;
+        SwingUtilities.invokeLater(() -> {
+            summaryPending = false;
+            refreshSummary();
+        });
+    }
+
+    private void refreshSummary() {
+        List<PlanStatistics.Group> groups = new ArrayList<>(statistics.groups());
+        groups.sort((a, b) -> a.type.compareTo(b.type));
+        groups.add(statistics.total());
+        StringBuilder text = new StringBuilder();
+        for (PlanStatistics.Group group : groups) {
+            if (text.length() > 0) text.append('\n');
+            text.append(group.type).append(": ").append(group.rooms()).append(group.rooms() == 1 ? " room" : " rooms");
+            text.append("\n  Area ").append(group.area()).append(", perimeter ").append(group.perimeter());
+            text.append(String.format("%n  Windows %.1f%% of floor", 100 * group.windowToFloorRatio()));
+            if (group.furnitureCount() > 0) {
+                text.append("\n ");
+                for (FurnitureType type : FurnitureType.all()) {
+                    int count = group.furnitureCount(type);
+                    if (count > 0) text.append(' ').append(type.name).append(" x").append(count);
+                }
+            }
+        }
+        text.append("\n  Walls ").append(statistics.wallLength());
+        summary.setText(text.toString());
+        summary.setCaretPosition(0);
+    }
+
+    private void updateUndoButtons() {
+        undoButton.setEnabled(history.canUndo());
+        redoButton.setEnabled(history.canRedo());
+        undoButton.setToolTipText(history.getUndoPresentationName());
+        redoButton.setToolTipText(history.getRedoPresentationName());
     }
 
     private void createNewProject() {
         clearRooms();
+        resetBuilding(new Building(floorBudget));
         JOptionPane.showMessageDialog(this, "New project created.", "New Project", JOptionPane.INFORMATION_MESSAGE);
     }
 
@@ -121,14 +325,60 @@ public class FloorPlanApp extends JFrame {
         int option = fileChooser.showSaveDialog(this);
         if (option == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
-            try (FileWriter writer = new FileWriter(file)) {
-                for (RoomPanel room : rooms) {
-                    writer.write(room.roomName + "," + room.getX() + "," + room.getY() + "," + room.getWidth() + "," + room.getHeight() + "," + room.getBackground().getRGB() + "\n");
+            if (PlanFile.isCsv(file.toPath()) && building.floorCount() > 1) {
+                JOptionPane.showMessageDialog(this, "CSV files hold a single floor; save multi-floor buildings as .fpl.", "Save", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            storeActiveFloor();
+            Building target = building;
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() throws IOException {
+                    target.save(file.toPath());
+                    return null;
                 }
-                JOptionPane.showMessageDialog(this, "File saved successfully.", "Save", JOptionPane.INFORMATION_MESSAGE);
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(this, "Error saving file.", "Error", JOptionPane.ERROR_MESSAGE);
+
+                @Override
+                protected void done() {
+                    try {
+                        get();
+                        JOptionPane.showMessageDialog(FloorPlanApp.this, "File saved successfully.", "Save", JOptionPane.INFORMATION_MESSAGE);
+                    } catch (Exception e) {
+                        JOptionPane.showMessageDialog(FloorPlanApp.this, "Error saving file.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
+        }
+    }
+
+    private void exportToFile() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export as SVG or PDF");
+        int option = fileChooser.showSaveDialog(this);
+        if (option == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+            if (!file.getName().toLowerCase().endsWith(".pdf") && !file.getName().toLowerCase().endsWith(".svg")) {
+                file = new File(file.getPath() + ".svg");
             }
+            File target = file;
+            PlanSnapshot snapshot = plan.snapshot();
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() throws IOException {
+                    VectorExport.export(snapshot.rooms(), target.toPath());
+                    return null;
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        get();
+                        JOptionPane.showMessageDialog(FloorPlanApp.this, "Plan exported to " + target.getName() + ".", "Export", JOptionPane.INFORMATION_MESSAGE);
+                    } catch (Exception e) {
+                        JOptionPane.showMessageDialog(FloorPlanApp.this, "Error exporting file.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
         }
     }
 
@@ -137,40 +387,297 @@ public class FloorPlanApp extends JFrame {
         int option = fileChooser.showOpenDialog(this);
         if (option == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                clearRooms();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length == 6) {
-                        String name = parts[0];
-                        int x = Integer.parseInt(parts[1]);
-                        int y = Integer.parseInt(parts[2]);
-                        int width = Integer.parseInt(parts[3]);
-                        int height = Integer.parseInt(parts[4]);
-                        Color color = new Color(Integer.parseInt(parts[5]));
-                        RoomPanel room = new RoomPanel(name, x, y, width, height, color);
-                        createRoom(room);
-                    }
+            clearRooms();
+
+            ProgressMonitor monitor = new ProgressMonitor(this, "Opening " + file.getName(), null, 0, 100);
+            monitor.setMillisToDecideToPopup(200);
+            PlanLoader loader = new PlanLoader(file.toPath(), this::addLoadedRooms, floorBudget) {
+                @Override
+                protected void done() {
+                    monitor.close();
+                    loadFinished(this);
+                }
+            };
+            loader.addPropertyChangeListener(evt -> {
+                if ("progress".equals(evt.getPropertyName())) {
+                    monitor.setProgress((Integer) evt.getNewValue());
+                }
+                if (monitor.isCanceled()) {
+                    loader.cancel(true);
                 }
-                JOptionPane.showMessageDialog(this, "Project opened successfully.", "Open Project", JOptionPane.INFORMATION_MESSAGE);
-            } catch (IOException | NumberFormatException e) {
-                JOptionPane.showMessageDialog(this, "Error opening file.", "Error", JOptionPane.ERROR_MESSAGE);
+            });
+            loader.execute();
+        }
+    }
+
+    private void addLoadedRooms(List<Room> batch) {
+        plan.beginBatch();
+        try {
+            for (Room room : batch) {
+                createRoom(room);
             }
+        } finally {
+            plan.commitBatch();
+        }
+    }
+
+    private void loadFinished(PlanLoader loader) {
+        history.discardAllEdits();
+        updateUndoButtons();
+        resetBuilding(new Building(floorBudget));
+        if (loader.isCancelled()) {
+            JOptionPane.showMessageDialog(this, "Opening cancelled after " + plan.size() + " rooms.", "Open Project", JOptionPane.WARNING_MESSAGE);
+            return;
         }
+        PlanLoader.Result result;
+        try {
+            result = loader.get();
+        } catch (Exception e) {
+            String reason = e.getCause() instanceof IOException ? ": " + e.getCause().getMessage() : ".";
+            JOptionPane.showMessageDialog(this, "Error opening file" + reason, "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (result.building != null) {
+            resetBuilding(result.building);
+        }
+        if (result.problemCount == 0) {
+            JOptionPane.showMessageDialog(this, "Project opened successfully.", "Open Project", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        StringBuilder message = new StringBuilder("Project opened with " + result.problemCount + " malformed line(s) skipped:\n");
+        int shown = Math.min(10, result.problems.size());
+        for (int i = 0; i < shown; i++) {
+            message.append(result.problems.get(i)).append('\n');
+        }
+        if (result.problemCount > shown) {
+            message.append("... and ").append(result.problemCount - shown).append(" more");
+        }
+        JOptionPane.showMessageDialog(this, message.toString(), "Open Project", JOptionPane.WARNING_MESSAGE);
     }
 
     private void clearRooms() {
-        for (RoomPanel room : rooms) {
-            floorPlanPanel.remove(room);
+        plan.clear();
+    }
+
+    /**
+     * Makes {@code next} the open building with its first floor shown. The
+     * rooms already in the plan become that floor; they were just loaded, and
+     * may have been snapped to the grid on the way in.
+     */
+    private void resetBuilding(Building next) {
+        building = next;
+        activeFloor = 0;
+        building.setActive(0);
+        floorDirty = true;
+        refreshFloors();
+    }
+
+    private void refreshFloors() {
+        updatingFloors = true;
+        try {
+            floorBox.removeAllItems();
+            for (int i = 0; i < building.floorCount(); i++) {
+                floorBox.addItem(building.floorName(i));
+            }
+            floorBox.setSelectedIndex(activeFloor);
+        } finally {
+            updatingFloors = false;
+        }
+    }
+
+    private void addFloor() {
+        String name = JOptionPane.showInputDialog(this, "Floor name:", "Floor " + (building.floorCount() + 1));
+        if (name == null || name.isBlank()) return;
+        int index = building.addFloor(name.trim());
+        refreshFloors();
+        floorBox.setSelectedIndex(index);
+    }
+
+    /** Hands the rooms on screen back to the building if they changed since the floor was shown. */
+    private void storeActiveFloor() {
+        if (floorDirty) {
+            building.setRooms(activeFloor, plan.rooms());
+            floorDirty = false;
+        }
+    }
+
+    /**
+     * Shows another floor. A resident floor is swapped in at once; otherwise
+     * it is decoded on a worker thread while the floor list is disabled.
+     */
+    private void switchFloor(int index) {
+        if (index < 0 || index == activeFloor) return;
+        Building source = building;
+        if (source.isResident(index)) {
+            try {
+                showFloor(index, source.rooms(index));
+                return;
+            } catch (IOException e) {
+                // evicted in the meantime; read it below
+            }
+        }
+        floorBox.setEnabled(false);
+        new SwingWorker<List<Room>, Void>() {
+            @Override
+            protected List<Room> doInBackground() throws IOException {
+                return source.rooms(index);
+            }
+
+            @Override
+            protected void done() {
+                floorBox.setEnabled(true);
+                if (source != building) return;
+                try {
+                    showFloor(index, get());
+                } catch (Exception e) {
+                    String reason = e.getCause() instanceof IOException ? ": " + e.getCause().getMessage() : ".";
+                    JOptionPane.showMessageDialog(FloorPlanApp.this, "Error reading floor " + building.floorName(index) + reason, "Error", JOptionPane.ERROR_MESSAGE);
+                    refreshFloors();
+                }
+            }
+        }.execute();
+    }
+
+    private void showFloor(int index, List<Room> rooms) {
+        storeActiveFloor();
+        switchingFloor = true;
+        try {
+            plan.batch(() -> {
+                plan.clear();
+                for (Room room : rooms) {
+                    plan.add(room);
+                }
+            });
+        } finally {
+            switchingFloor = false;
+        }
+        activeFloor = index;
+        floorDirty = false;
+        building.setActive(index);
+        floorPlanPanel.clearSelection();
+        history.discardAllEdits();
+        updateUndoButtons();
+        refreshFloors();
+    }
+
+    /**
+     * Hosts a session on this machine or joins one elsewhere; pressed again it
+     * leaves the session. Edits from others are kept out of the undo history,
+     * and floors cannot be switched while connected. Sessions have no
+     * authentication, so a host only listens on the loopback interface unless
+     * the user explicitly chooses to host on the network.
+     */
+    private void toggleCollaboration() {
+        if (collabClient != null) {
+            stopCollaboration();
+            return;
+        }
+        Object[] choices = {"Host", "Host on Network", "Join", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(this, "Host a session on port " + CollabServer.DEFAULT_PORT + " or join one?",
+                "Collaborate", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, choices, choices[0]);
+        InetSocketAddress address;
+        InetSocketAddress bind = null;
+        boolean host = choice == 0 || choice == 1;
+        if (host) {
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), CollabServer.DEFAULT_PORT);
+            bind = address;
+            if (choice == 1) {
+                int confirm = JOptionPane.showConfirmDialog(this, "Anyone who can reach this computer on port "
+                        + CollabServer.DEFAULT_PORT + " will be able to join without a password and edit the plan. Host anyway?",
+                        "Collaborate", JOptionPane.OK_CANCEL_OPTION, JOptionPane.WARNING_MESSAGE);
+                if (confirm != JOptionPane.OK_OPTION) return;
+                bind = new InetSocketAddress(CollabServer.DEFAULT_PORT);
+            }
+        } else if (choice == 2) {
+            String target = JOptionPane.showInputDialog(this, "Host[:port]:", "localhost:" + CollabServer.DEFAULT_PORT);
+            if (target == null || target.isBlank()) return;
+            target = target.trim();
+            int colon = target.lastIndexOf(':');
+            try {
+                address = colon < 0
+                        ? new InetSocketAddress(target, CollabServer.DEFAULT_PORT)
+                        : new InetSocketAddress(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, "Invalid address.", "Collaborate", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        } else {
+            return;
+        }
+        CollabClient client = new CollabClient(plan, SwingUtilities::invokeLater, history::untracked);
+        client.setOnDisconnect(cause -> collaborationEnded(client, cause));
+        InetSocketAddress listen = bind;
+        collabButton.setEnabled(false);
+        new SwingWorker<CollabServer, Void>() {
+            @Override
+            protected CollabServer doInBackground() throws IOException {
+                CollabServer server = null;
+                if (host) {
+                    server = new CollabServer(listen);
+                    server.start();
+                }
+                try {
+                    client.connect(address);
+                } catch (IOException e) {
+                    if (server != null) server.close();
+                    throw e;
+                }
+                return server;
+            }
+
+            @Override
+            protected void done() {
+                collabButton.setEnabled(true);
+                try {
+                    collabServer = get();
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(FloorPlanApp.this, "Could not " + (host ? "host" : "join") + " a session.", "Collaborate", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                collabClient = client;
+                history.discardAllEdits();
+                updateUndoButtons();
+                floorBox.setEnabled(false);
+                addFloorButton.setEnabled(false);
+                collabButton.setText(host ? "Stop Hosting" : "Leave Session");
+                if (!client.isConnected()) {
+                    collaborationEnded(client, new IOException("Connection closed"));
+                }
+            }
+        }.execute();
+    }
+
+    private void stopCollaboration() {
+        if (collabClient == null) return;
+        try {
+            collabClient.close();
+        } catch (IOException e) {
+            // leaving anyway
+        }
+    }
+
+    private void collaborationEnded(CollabClient client, IOException cause) {
+        if (client != collabClient) return;
+        collabClient = null;
+        if (collabServer != null) {
+            try {
+                collabServer.close();
+            } catch (IOException e) {
+                // stopping anyway
+            }
+            collabServer = null;
+        }
+        plan.setIdBlock(1, Integer.MAX_VALUE);
+        floorBox.setEnabled(true);
+        addFloorButton.setEnabled(true);
+        collabButton.setText("Collaborate");
+        if (cause != null) {
+            JOptionPane.showMessageDialog(this, "Connection to the session was lost.", "Collaborate", JOptionPane.WARNING_MESSAGE);
         }
-        rooms.clear();
-        floorPlanPanel.revalidate();
-        floorPlanPanel.repaint();
     }
 
     private void addRoomDialog() {
-        if (rooms.isEmpty()) {
+        if (plan.isEmpty()) {
             originalAddRoomDialog();
             return;
         }
@@ -182,22 +689,21 @@ public class FloorPlanApp extends JFrame {
         JSpinner widthField = new JSpinner(new SpinnerNumberModel(100, 20, 500, 10));
         JSpinner heightField = new JSpinner(new SpinnerNumberModel(100, 20, 500, 10));
 
-        String[] roomTypes = {"Bedroom", "Bathroom", "Kitchen", "Living Room"};
-        JComboBox<String> roomTypeBox = new JComboBox<>(roomTypes);
+        JComboBox<String> roomTypeBox = new JComboBox<>(ROOM_TYPES);
 
         String[] colorNames = {"Red", "Blue", "Green", "Cyan", "Magenta", "Yellow", "Orange"};
         JComboBox<String> colorBox = new JComboBox<>(colorNames);
         colorBox.setRenderer(new ColorCellRenderer());
 
-        JComboBox<RoomPanel> existingRoomsBox = new JComboBox<>(rooms.toArray(new RoomPanel[0]));
+        JComboBox<Room> existingRoomsBox = new JComboBox<>(plan.rooms().toArray(new Room[0]));
         existingRoomsBox.setRenderer(new DefaultListCellRenderer() {
             @Override
             public Component getListCellRendererComponent(JList<?> list, Object value,
                                                           int index, boolean isSelected,
                                                           boolean cellHasFocus) {
-                if (value instanceof RoomPanel) {
-                    RoomPanel room = (RoomPanel) value;
-                    return super.getListCellRendererComponent(list, room.roomName,
+                if (value instanceof Room) {
+                    Room room = (Room) value;
+                    return super.getListCellRendererComponent(list, room.name,
                             index, isSelected, cellHasFocus);
                 }
                 return super.getListCellRendererComponent(list, value,
@@ -205,8 +711,7 @@ public class FloorPlanApp extends JFrame {
             }
         });
 
-        String[] positionOptions = {"North", "South", "East", "West"};
-        JComboBox<String> positionBox = new JComboBox<>(positionOptions);
+        JComboBox<Side> positionBox = new JComboBox<>(Side.values());
 
         panel.add(new JLabel("Room Type:"));
         panel.add(roomTypeBox);
@@ -230,35 +735,35 @@ public class FloorPlanApp extends JFrame {
             try {
                 String roomType = (String) roomTypeBox.getSelectedItem();
                 String name = nameField.getText().trim();
-                RoomPanel baseRoom = (RoomPanel) existingRoomsBox.getSelectedItem();
-                String position = (String) positionBox.getSelectedItem();
+                Room baseRoom = (Room) existingRoomsBox.getSelectedItem();
+                Side position = (Side) positionBox.getSelectedItem();
                 int width = ((Number) widthField.getValue()).intValue();
                 int height = ((Number) heightField.getValue()).intValue();
                 Color color = getColorFromName((String) colorBox.getSelectedItem());
 
-                int newX = baseRoom.getX();
-                int newY = baseRoom.getY();
+                int newX = baseRoom.x;
+                int newY = baseRoom.y;
 
                 switch (position) {
-                    case "North":
-                        newY = baseRoom.getY() - height - GRID_SPACING;
-                        newX = baseRoom.getX();
+                    case NORTH:
+                        newY = baseRoom.y - height - GRID_SPACING;
+                        newX = baseRoom.x;
                         break;
-                    case "South":
-                        newY = baseRoom.getY() + baseRoom.getHeight() + GRID_SPACING;
-                        newX = baseRoom.getX();
+                    case SOUTH:
+                        newY = baseRoom.y + baseRoom.height + GRID_SPACING;
+                        newX = baseRoom.x;
                         break;
-                    case "East":
-                        newX = baseRoom.getX() + baseRoom.getWidth() + GRID_SPACING;
-                        newY = baseRoom.getY();
+                    case EAST:
+                        newX = baseRoom.x + baseRoom.width + GRID_SPACING;
+                        newY = baseRoom.y;
                         break;
-                    case "West":
-                        newX = baseRoom.getX() - width - GRID_SPACING;
-                        newY = baseRoom.getY();
+                    case WEST:
+                        newX = baseRoom.x - width - GRID_SPACING;
+                        newY = baseRoom.y;
                         break;
                 }
 
-                RoomPanel newRoom = new RoomPanel(name + " (" + roomType + ")", newX, newY, width, height, color);
+                Room newRoom = new Room(name + " (" + roomType + ")", newX, newY, width, height, color.getRGB());
                 if (checkRoomOverlap(newRoom)) {
                     JOptionPane.showMessageDialog(this, "Room overlaps with another room. Please adjust the position.", "Overlap Error", JOptionPane.ERROR_MESSAGE);
                 } else {
@@ -276,6 +781,7 @@ public class FloorPlanApp extends JFrame {
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
         JTextField nameField = new JTextField(20);
+        JComboBox<String> roomTypeBox = new JComboBox<>(ROOM_TYPES);
         JSpinner xField = new JSpinner(new SpinnerNumberModel(10, 0, 100, 1));
         JSpinner yField = new JSpinner(new SpinnerNumberModel(10, 0, 100, 1));
         JSpinner widthField = new JSpinner(new SpinnerNumberModel(100, 20, 500, 10));
@@ -285,6 +791,8 @@ public class FloorPlanApp extends JFrame {
         JComboBox<String> colorBox = new JComboBox<>(colorNames);
         colorBox.setRenderer(new ColorCellRenderer());
 
+        panel.add(new JLabel("Room Type:"));
+        panel.add(roomTypeBox);
         panel.add(new JLabel("Room Name:"));
         panel.add(nameField);
         panel.add(new JLabel("X Position (Grid):"));
@@ -303,6 +811,7 @@ public class FloorPlanApp extends JFrame {
 
         if (result == JOptionPane.OK_OPTION) {
             try {
+                String roomType = (String) roomTypeBox.getSelectedItem();
                 String name = nameField.getText().trim();
                 int x = ((Number) xField.getValue()).intValue() * GRID_SPACING;
                 int y = ((Number) yField.getValue()).intValue() * GRID_SPACING;
@@ -310,7 +819,7 @@ public class FloorPlanApp extends JFrame {
                 int height = ((Number) heightField.getValue()).intValue();
                 Color color = getColorFromName((String) colorBox.getSelectedItem());
 
-                RoomPanel newRoom = new RoomPanel(name, x, y, width, height, color);
+                Room newRoom = new Room(name + " (" + roomType + ")", x, y, width, height, color.getRGB());
                 if (checkRoomOverlap(newRoom)) {
                     JOptionPane.showMessageDialog(this, "Room overlaps with another room. Please adjust the position.", "Overlap Error", JOptionPane.ERROR_MESSAGE);
                 } else {
@@ -336,30 +845,79 @@ public class FloorPlanApp extends JFrame {
         }
     }
 
-    private void createRoom(RoomPanel room) {
-        floorPlanPanel.add(room);
-        rooms.add(room);
-        autoAlignToGrid(room);
-        floorPlanPanel.revalidate();
-        floorPlanPanel.repaint();
+    private void createRoom(Room room) {
+        plan.batch(() -> plan.snapToGrid(plan.add(room).id));
     }
 
-    private void autoAlignToGrid(RoomPanel room) {
-        int newX = Math.round((float) room.getX() / GRID_SPACING) * GRID_SPACING;
-        int newY = Math.round((float) room.getY() / GRID_SPACING) * GRID_SPACING;
-        room.setLocation(newX, newY);
+    private boolean checkRoomOverlap(Room newRoom) {
+        return plan.overlapsAnother(newRoom);
     }
 
-    private boolean checkRoomOverlap(RoomPanel newRoom) {
-        for (RoomPanel room : rooms) {
-            if (newRoom.getBounds().intersects(room.getBounds())) {
-                return true;
-            }
+    /**
+     * Re-packs every room without overlaps. Rooms that currently sit within one
+     * grid cell of each other are kept adjacent. The solver runs off the EDT and
+     * the result is applied as a single undoable batch, unless the plan or the
+     * floor changed meanwhile, in which case it no longer fits and is dropped.
+     */
+    private void autoLayout(JButton trigger) {
+        if (plan.isEmpty()) return;
+        Room[] snapshot = plan.rooms().toArray(new Room[0]);
+        long version = plan.getVersion();
+        Building source = building;
+        int floor = activeFloor;
+        int n = snapshot.length;
+        int[] widths = new int[n], heights = new int[n], xs = new int[n], ys = new int[n];
+        HashMap<Integer, Integer> indexOf = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Room room = snapshot[i];
+            widths[i] = room.width;
+            heights[i] = room.height;
+            xs[i] = room.x;
+            ys[i] = room.y;
+            indexOf.put(room.id, i);
         }
-        return false;
+        List<int[]> adjacency = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Room room = snapshot[i];
+            int from = i;
+            plan.query(room.x - GRID_SPACING, room.y - GRID_SPACING, room.width + 2 * GRID_SPACING, room.height + 2 * GRID_SPACING, other -> {
+                int to = indexOf.get(other.id);
+                if (to > from) adjacency.add(new int[]{from, to});
+            });
+        }
+
+        trigger.setEnabled(false);
+        new SwingWorker<LayoutSolver.Layout, Void>() {
+            @Override
+            protected LayoutSolver.Layout doInBackground() {
+                return new LayoutSolver(widths, heights, xs, ys, adjacency).solve(Long.getLong("floorplanner.layoutMillis", 2000));
+            }
+
+            @Override
+            protected void done() {
+                trigger.setEnabled(true);
+                LayoutSolver.Layout layout;
+                try {
+                    layout = get();
+                } catch (Exception e) {
+                    JOptionPane.showMessageDialog(FloorPlanApp.this, "Auto layout failed.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (plan.getVersion() != version || building != source || activeFloor != floor) {
+                    JOptionPane.showMessageDialog(FloorPlanApp.this, "The plan changed during auto layout; run it again.", "Auto Layout", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+                plan.batch(() -> {
+                    for (int i = 0; i < n; i++) {
+                        plan.update(plan.get(snapshot[i].id).withLocation(layout.xs[i], layout.ys[i]));
+                    }
+                });
+            }
+        }.execute();
     }
 
     private void addDoorDialog() {
+        Room selectedRoom = floorPlanPanel.getSelectedRoom();
         if (selectedRoom == null) {
             JOptionPane.showMessageDialog(this, "Please select a room first.", "No Room Selected", JOptionPane.WARNING_MESSAGE);
             return;
@@ -368,18 +926,22 @@ public class FloorPlanApp extends JFrame {
         JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
-        JSpinner widthField = new JSpinner(new SpinnerNumberModel(30, 10, selectedRoom.getWidth(), 5));
-        JSpinner heightField = new JSpinner(new SpinnerNumberModel(10, 10, selectedRoom.getHeight(), 5));
+        int longest = Math.max(selectedRoom.width, selectedRoom.height);
+        JSpinner widthField = new JSpinner(new SpinnerNumberModel(30, 10, longest, 5));
+        JSpinner heightField = new JSpinner(new SpinnerNumberModel(10, 10, longest, 5));
 
-        String[] positionOptions = {"North", "South", "East", "West"};
-        JComboBox<String> positionBox = new JComboBox<>(positionOptions);
+        JComboBox<Side> positionBox = new JComboBox<>(Side.values());
+        JTextField offsetField = new JTextField();
+        offsetField.setToolTipText("Distance from the start of the wall; leave empty to centre on the room");
 
         panel.add(new JLabel("Door Width:"));
         panel.add(widthField);
-        panel.add(new JLabel("Door Height:"));
+        panel.add(new JLabel("Door Depth:"));
         panel.add(heightField);
         panel.add(new JLabel("Position:"));
         panel.add(positionBox);
+        panel.add(new JLabel("Offset along wall:"));
+        panel.add(offsetField);
 
         int result = JOptionPane.showConfirmDialog(this, panel, "Add Door",
                 JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
@@ -387,18 +949,13 @@ public class FloorPlanApp extends JFrame {
         if (result == JOptionPane.OK_OPTION) {
             int width = ((Number) widthField.getValue()).intValue();
             int height = ((Number) heightField.getValue()).intValue();
-            String position = (String) positionBox.getSelectedItem();
-
-            if (selectedRoom.checkOverlapWithWindows(width, height, position)) {
-                JOptionPane.showMessageDialog(this, "Door overlaps with a window. Please choose a different position.", "Overlap Error", JOptionPane.ERROR_MESSAGE);
-            } else {
-                selectedRoom.addDoor(width, height, position);
-                floorPlanPanel.repaint();
-            }
+            Side position = (Side) positionBox.getSelectedItem();
+            placeOpening(selectedRoom, position, offsetField.getText(), width, height, true);
         }
     }
 
     private void addWindowDialog() {
+        Room selectedRoom = floorPlanPanel.getSelectedRoom();
         if (selectedRoom == null) {
             JOptionPane.showMessageDialog(this, "Please select a room first.", "No Room Selected", JOptionPane.WARNING_MESSAGE);
             return;
@@ -407,18 +964,22 @@ public class FloorPlanApp extends JFrame {
         JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
-        JSpinner widthField = new JSpinner(new SpinnerNumberModel(30, 10, selectedRoom.getWidth(), 5));
-        JSpinner heightField = new JSpinner(new SpinnerNumberModel(10, 10, selectedRoom.getHeight(), 5));
+        int longest = Math.max(selectedRoom.width, selectedRoom.height);
+        JSpinner widthField = new JSpinner(new SpinnerNumberModel(30, 10, longest, 5));
+        JSpinner heightField = new JSpinner(new SpinnerNumberModel(10, 10, longest, 5));
 
-        String[] positionOptions = {"North", "South", "East", "West"};
-        JComboBox<String> positionBox = new JComboBox<>(positionOptions);
+        JComboBox<Side> positionBox = new JComboBox<>(Side.values());
+        JTextField offsetField = new JTextField();
+        offsetField.setToolTipText("Distance from the start of the wall; leave empty to centre on the room");
 
         panel.add(new JLabel("Window Width:"));
         panel.add(widthField);
-        panel.add(new JLabel("Window Height:"));
+        panel.add(new JLabel("Window Depth:"));
         panel.add(heightField);
         panel.add(new JLabel("Position:"));
         panel.add(positionBox);
+        panel.add(new JLabel("Offset along wall:"));
+        panel.add(offsetField);
 
         int result = JOptionPane.showConfirmDialog(this, panel, "Add Window",
                 JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
@@ -426,30 +987,65 @@ public class FloorPlanApp extends JFrame {
         if (result == JOptionPane.OK_OPTION) {
             int width = ((Number) widthField.getValue()).intValue();
             int height = ((Number) heightField.getValue()).intValue();
-            String position = (String) positionBox.getSelectedItem();
+            Side position = (Side) positionBox.getSelectedItem();
+            placeOpening(selectedRoom, position, offsetField.getText(), width, height, false);
+        }
+    }
 
-            if (selectedRoom.checkOverlapWithDoors(width, height, position)) {
-                JOptionPane.showMessageDialog(this, "Window overlaps with a door. Please choose a different position.", "Overlap Error", JOptionPane.ERROR_MESSAGE);
-            } else {
-                selectedRoom.addWindow(width, height, position);
-                floorPlanPanel.repaint();
+    /**
+     * Puts a door or window {@code length} long and {@code depth} deep into the
+     * wall that the given side of {@code room} is part of. The offset is
+     * measured from the start of that wall, which may run past the room; the
+     * opening goes into every room whose edge covers it, so a door in a shared
+     * wall appears on both sides.
+     */
+    private void placeOpening(Room room, Side side, String offsetText, int length, int depth, boolean door) {
+        String what = door ? "Door" : "Window";
+        WallGraph.Wall wall = floorPlanPanel.getWallGraph().wallOf(room, side);
+        int edgeStart = wall.horizontal ? room.x : room.y;
+        int edgeLength = wall.horizontal ? room.width : room.height;
+        int start;
+        try {
+            start = offsetText.isBlank() ? edgeStart + (edgeLength - length) / 2 : wall.start + Integer.parseInt(offsetText.trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Invalid offset.", "Add " + what, JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        List<Room> rooms = wall.contains(start, start + length) ? WallGraph.roomsAlong(plan, wall, start, length) : List.of();
+        if (rooms.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "The offset is measured from the start of the wall, which is " + wall.length()
+                            + " long; the whole " + what.toLowerCase() + " must lie on it, along the side of a single room.",
+                    "Add " + what, JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        for (Room r : rooms) {
+            int[] rect = WallGraph.openingRect(r, wall, start, length, Math.min(depth, wall.horizontal ? r.height : r.width));
+            boolean onDoor = r.doors.intersectsAny(rect[0], rect[1], rect[2], rect[3]);
+            if (onDoor || r.windows.intersectsAny(rect[0], rect[1], rect[2], rect[3])) {
+                JOptionPane.showMessageDialog(this, what + " overlaps with a " + (onDoor ? "door" : "window") + ". Please choose a different position.",
+                        "Overlap Error", JOptionPane.ERROR_MESSAGE);
+                return;
             }
         }
+        plan.batch(() -> {
+            for (Room r : rooms) {
+                int[] rect = WallGraph.openingRect(r, wall, start, length, Math.min(depth, wall.horizontal ? r.height : r.width));
+                plan.update(door ? r.withDoor(rect[0], rect[1], rect[2], rect[3]) : r.withWindow(rect[0], rect[1], rect[2], rect[3]));
+            }
+        });
     }
 
     private void deleteSelectedRoom() {
+        Room selectedRoom = floorPlanPanel.getSelectedRoom();
         if (selectedRoom != null) {
-            floorPlanPanel.remove(selectedRoom);
-            rooms.remove(selectedRoom);
-            selectedRoom = null;
-            floorPlanPanel.revalidate();
-            floorPlanPanel.repaint();
+            plan.remove(selectedRoom.id);
         } else {
             JOptionPane.showMessageDialog(this, "No room selected to delete.", "Delete Room", JOptionPane.WARNING_MESSAGE);
         }
     }
 
     private void addFurnitureDialog() {
+        Room selectedRoom = floorPlanPanel.getSelectedRoom();
         if (selectedRoom == null) {
             JOptionPane.showMessageDialog(this, "Please select a room first.", "No Room Selected", JOptionPane.WARNING_MESSAGE);
             return;
@@ -458,14 +1054,13 @@ public class FloorPlanApp extends JFrame {
         JPanel panel = new JPanel(new GridLayout(0, 2, 5, 5));
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 
-        String[] furnitureTypes = {"Bed", "Sink", "Dining Table"};
-        JComboBox<String> furnitureBox = new JComboBox<>(furnitureTypes);
+        JComboBox<FurnitureType> furnitureBox = new JComboBox<>(FurnitureType.all());
 
-        JSpinner widthField = new JSpinner(new SpinnerNumberModel(30, 10, selectedRoom.getWidth(), 5));
-        JSpinner heightField = new JSpinner(new SpinnerNumberModel(30, 10, selectedRoom.getHeight(), 5));
+        JSpinner widthField = new JSpinner(new SpinnerNumberModel(30, 10, selectedRoom.width, 5));
+        JSpinner heightField = new JSpinner(new SpinnerNumberModel(30, 10, selectedRoom.height, 5));
 
-        JSpinner xField = new JSpinner(new SpinnerNumberModel(0, 0, selectedRoom.getWidth(), 1));
-        JSpinner yField = new JSpinner(new SpinnerNumberModel(0, 0, selectedRoom.getHeight(), 1));
+        JSpinner xField = new JSpinner(new SpinnerNumberModel(0, 0, selectedRoom.width, 1));
+        JSpinner yField = new JSpinner(new SpinnerNumberModel(0, 0, selectedRoom.height, 1));
 
         panel.add(new JLabel("Furniture Type:"));
         panel.add(furnitureBox);
@@ -482,359 +1077,20 @@ public class FloorPlanApp extends JFrame {
                 JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
 
         if (result == JOptionPane.OK_OPTION) {
-            String furnitureType = (String) furnitureBox.getSelectedItem();
+            FurnitureType furnitureType = (FurnitureType) furnitureBox.getSelectedItem();
             int width = ((Number) widthField.getValue()).intValue();
             int height = ((Number) heightField.getValue()).intValue();
             int x = ((Number) xField.getValue()).intValue();
             int y = ((Number) yField.getValue()).intValue();
 
-            Furniture newFurniture = new Furniture(furnitureType, x, y, width, height);
-            if (selectedRoom.checkFurnitureOverlap(newFurniture)) {
+            if (selectedRoom.checkFurnitureOverlap(x, y, width, height)) {
                 JOptionPane.showMessageDialog(this, "Furniture overlaps with another furniture. Please adjust the position.", "Overlap Error", JOptionPane.ERROR_MESSAGE);
             } else {
-                selectedRoom.addFurniture(furnitureType, x, y, width, height);
-                floorPlanPanel.repaint();
+                plan.update(selectedRoom.withFurniture(furnitureType, x, y, width, height));
             }
         }
     }
 
-    private class RoomPanel extends JPanel implements MouseListener, MouseMotionListener {
-        public String roomName;
-        private Point dragStart = null;
-        private boolean isDragging = false;
-        private final int RESIZE_BORDER = 10;
-        private boolean isResizing = false;
-        private int resizeEdge = 0;
-        private ArrayList<Door> doors = new ArrayList<>();
-        private ArrayList<Window> windows = new ArrayList<>();
-        private ArrayList<Furniture> furnitures = new ArrayList<>();
-
-        public RoomPanel(String roomName, int x, int y, int width, int height, Color color) {
-            this.roomName = roomName;
-            setBounds(x, y, width, height);
-            setBackground(color);
-            setLayout(new BorderLayout());
-
-            JLabel roomLabel = new JLabel(roomName, JLabel.CENTER);
-            roomLabel.setForeground(Color.WHITE);
-            roomLabel.setFont(new Font("Arial", Font.BOLD, 14));
-            add(roomLabel, BorderLayout.CENTER);
-
-            addMouseListener(this);
-            addMouseMotionListener(this);
-
-            // Set a solid black border with a thickness of 2 pixels
-            setBorder(BorderFactory.createLineBorder(Color.BLACK, 2));
-        }
-
-        public void addDoor(int width, int height, String position) {
-            int x = 0, y = 0;
-            switch (position) {
-                case "North":
-                    x = (getWidth() - width) / 2;
-                    y = 0;
-                    break;
-                case "South":
-                    x = (getWidth() - width) / 2;
-                    y = getHeight() - height;
-                    break;
-                case "East":
-                    x = getWidth() - width;
-                    y = (getHeight() - height) / 2;
-                    break;
-                case "West":
-                    x = 0;
-                    y = (getHeight() - height) / 2;
-                    break;
-            }
-            doors.add(new Door(x, y, width, height));
-        }
-
-        public void addWindow(int width, int height, String position) {
-            int x = 0, y = 0;
-            switch (position) {
-                case "North":
-                    x = (getWidth() - width) / 2;
-                    y = 0;
-                    break;
-                case "South":
-                    x = (getWidth() - width) / 2;
-                    y = getHeight() - height;
-                    break;
-                case "East":
-                    x = getWidth() - width;
-                    y = (getHeight() - height) / 2;
-                    break;
-                case "West":
-                    x = 0;
-                    y = (getHeight() - height) / 2;
-                    break;
-            }
-            windows.add(new Window(x, y, width, height));
-        }
-
-        public void addFurniture(String type, int x, int y, int width, int height) {
-            furnitures.add(new Furniture(type, x, y, width, height));
-        }
-
-        public boolean checkOverlapWithDoors(int width, int height, String position) {
-            int x = 0, y = 0;
-            switch (position) {
-                case "North":
-                    x = (getWidth() - width) / 2;
-                    y = 0;
-                    break;
-                case "South":
-                    x = (getWidth() - width) / 2;
-                    y = getHeight() - height;
-                    break;
-                case "East":
-                    x = getWidth() - width;
-                    y = (getHeight() - height) / 2;
-                    break;
-                case "West":
-                    x = 0;
-                    y = (getHeight() - height) / 2;
-                    break;
-            }
-            Rectangle newWindow = new Rectangle(x, y, width, height);
-            for (Door door : doors) {
-                if (newWindow.intersects(new Rectangle(door.x, door.y, door.width, door.height))) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        public boolean checkOverlapWithWindows(int width, int height, String position) {
-            int x = 0, y = 0;
-            switch (position) {
-                case "North":
-                    x = (getWidth() - width) / 2;
-                    y = 0;
-                    break;
-                case "South":
-                    x = (getWidth() - width) / 2;
-                    y = getHeight() - height;
-                    break;
-                case "East":
-                    x = getWidth() - width;
-                    y = (getHeight() - height) / 2;
-                    break;
-                case "West":
-                    x = 0;
-                    y = (getHeight() - height) / 2;
-                    break;
-            }
-            Rectangle newDoor = new Rectangle(x, y, width, height);
-            for (Window window : windows) {
-                if (newDoor.intersects(new Rectangle(window.x, window.y, window.width, window.height))) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        public boolean checkFurnitureOverlap(Furniture newFurniture) {
-            Rectangle newFurnitureRect = new Rectangle(newFurniture.x, newFurniture.y, newFurniture.width, newFurniture.height);
-            for (Furniture furniture : furnitures) {
-                Rectangle existingFurnitureRect = new Rectangle(furniture.x, furniture.y, furniture.width, furniture.height);
-                if (newFurnitureRect.intersects(existingFurnitureRect)) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            Graphics2D g2d = (Graphics2D) g;
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                    RenderingHints.VALUE_ANTIALIAS_ON);
-
-            if (this == selectedRoom) {
-                g2d.setColor(Color.BLACK);
-                g2d.fillRect(getWidth() - 8, getHeight() - 8, 8, 8);
-            }
-
-            g2d.setColor(Color.DARK_GRAY);
-            for (Door door : doors) {
-                g2d.fillRect(door.x, door.y, door.width, door.height);
-            }
-
-            g2d.setColor(Color.LIGHT_GRAY);
-            for (Window window : windows) {
-                g2d.fillRect(window.x, window.y, window.width, window.height);
-            }
-
-            for (Furniture furniture : furnitures) {
-                switch (furniture.type) {
-                    case "Bed":
-                        g2d.setColor(Color.PINK);
-                        g2d.fillRect(furniture.x, furniture.y, furniture.width, furniture.height);
-                        break;
-                    case "Sink":
-                        g2d.setColor(Color.CYAN);
-                        g2d.fillArc(furniture.x, furniture.y, furniture.width, furniture.height, 0, 180);
-                        break;
-                    case "Dining Table":
-                        g2d.setColor(Color.ORANGE);
-                        g2d.fillOval(furniture.x, furniture.y, furniture.width, furniture.height);
-                        break;
-                }
-            }
-        }
-
-        @Override
-        public void mousePressed(MouseEvent e) {
-            selectedRoom = this;
-            dragStart = e.getPoint();
-            isDragging = true;
-
-            if (e.getX() >= getWidth() - RESIZE_BORDER &&
-                    e.getY() >= getHeight() - RESIZE_BORDER) {
-                isResizing = true;
-                resizeEdge = 3;
-            } else if (e.getX() >= getWidth() - RESIZE_BORDER) {
-                isResizing = true;
-                resizeEdge = 1;
-            } else if (e.getY() >= getHeight() - RESIZE_BORDER) {
-                isResizing = true;
-                resizeEdge = 2;
-            }
-
-            getParent().setComponentZOrder(this, 0);
-            repaint();
-        }
-
-        @Override
-        public void mouseDragged(MouseEvent e) {
-            if (!isDragging) return;
-
-            if (isResizing) {
-                int newWidth = getWidth();
-                int newHeight = getHeight();
-
-                if (resizeEdge == 1 || resizeEdge == 3) {
-                    newWidth = Math.max(50, e.getX());
-                }
-                if (resizeEdge == 2 || resizeEdge == 3) {
-                    newHeight = Math.max(50, e.getY());
-                }
-
-                newWidth = Math.round((float) newWidth / GRID_SPACING) * GRID_SPACING;
-                newHeight = Math.round((float) newHeight / GRID_SPACING) * GRID_SPACING;
-
-                setSize(newWidth, newHeight);
-            } else {
-                Point current = e.getLocationOnScreen();
-                Point offset = getLocationOnScreen();
-                int newX = getX() + (current.x - offset.x - dragStart.x);
-                int newY = getY() + (current.y - offset.y - dragStart.y);
-
-                newX = Math.max(0, Math.min(newX, getParent().getWidth() - getWidth()));
-                newY = Math.max(0, Math.min(newY, getParent().getHeight() - getHeight()));
-
-                setLocation(newX, newY);
-            }
-
-            getParent().repaint();
-        }
-
-        @Override
-        public void mouseReleased(MouseEvent e) {
-            if (isDragging) {
-                autoAlignToGrid(this);
-                if (checkRoomOverlap(this)) {
-                    autoAdjustPosition(this);
-                }
-                isDragging = false;
-                isResizing = false;
-                resizeEdge = 0;
-                getParent().repaint();
-            }
-        }
-
-        private void autoAdjustPosition(RoomPanel room) {
-            for (RoomPanel otherRoom : rooms) {
-                if (room != otherRoom && room.getBounds().intersects(otherRoom.getBounds())) {
-                    Rectangle bounds = room.getBounds();
-                    Rectangle otherBounds = otherRoom.getBounds();
-
-                    if (bounds.intersects(otherBounds)) {
-                        room.setLocation(otherBounds.x + otherBounds.width + GRID_SPACING, otherBounds.y);
-                        if (!checkRoomOverlap(room)) return;
-
-                        room.setLocation(otherBounds.x - bounds.width - GRID_SPACING, otherBounds.y);
-                        if (!checkRoomOverlap(room)) return;
-
-                        room.setLocation(otherBounds.x, otherBounds.y + otherBounds.height + GRID_SPACING);
-                        if (!checkRoomOverlap(room)) return;
-
-                        room.setLocation(otherBounds.x, otherBounds.y - bounds.height - GRID_SPACING);
-                        if (!checkRoomOverlap(room)) return;
-                    }
-                }
-            }
-        }
-
-        @Override
-        public void mouseMoved(MouseEvent e) {
-            if (e.getX() >= getWidth() - RESIZE_BORDER &&
-                    e.getY() >= getHeight() - RESIZE_BORDER) {
-                setCursor(Cursor.getPredefinedCursor(Cursor.SE_RESIZE_CURSOR));
-            } else if (e.getX() >= getWidth() - RESIZE_BORDER) {
-                setCursor(Cursor.getPredefinedCursor(Cursor.E_RESIZE_CURSOR));
-            } else if (e.getY() >= getHeight() - RESIZE_BORDER) {
-                setCursor(Cursor.getPredefinedCursor(Cursor.S_RESIZE_CURSOR));
-            } else {
-                setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
-            }
-        }
-
-        @Override public void mouseClicked(MouseEvent e) {}
-        @Override public void mouseEntered(MouseEvent e) {}
-        @Override public void mouseExited(MouseEvent e) {
-            setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-        }
-    }
-
-    private class Door {
-        int x, y, width, height;
-
-        public Door(int x, int y, int width, int height) {
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-        }
-    }
-
-    private class Window {
-        int x, y, width, height;
-
-        public Window(int x, int y, int width, int height) {
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-        }
-    }
-
-    private class Furniture {
-        String type;
-        int x, y, width, height;
-
-        public Furniture(String type, int x, int y, int width, int height) {
-            this.type = type;
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-        }
-    }
-
     private class ColorCellRenderer extends JLabel implements ListCellRenderer<String> {
         public ColorCellRenderer() {
             setOpaque(true);
@@ -853,12 +1109,24 @@ public class FloorPlanApp extends JFrame {
     }
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(PlanTool.run(args, System.out, System.err));
+        }
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
 
+        String catalogue = System.getProperty("floorplanner.furnitureCatalogue");
+        if (catalogue != null) {
+            try {
+                FurnitureType.loadCatalogue(new File(catalogue).toPath());
+            } catch (IOException e) {
+                System.err.println("Could not load furniture catalogue " + catalogue + ": " + e.getMessage());
+            }
+        }
+
         SwingUtilities.invokeLater(FloorPlanApp::new);
     }
 }
@@ -0,0 +1,67 @@
+import java.util.Arrays;
+
+/**
+ * Ring buffer of recent frame times, in nanoseconds. Not thread-safe: the
+ * canvas only touches its timer from the painting thread, other owners
+ * synchronize on it.
+ */
+final class FrameTimer {
+    private final long[] samples;
+    private final long[] starts;
+    private int count = 0;
+    private int next = 0;
+    private long frames = 0;
+    private long frameStart;
+
+    FrameTimer(int capacity) {
+        samples = new long[capacity];
+        starts = new long[capacity];
+    }
+
+    public void begin() {
+        frameStart = System.nanoTime();
+    }
+
+    public long end() {
+        long elapsed = System.nanoTime() - frameStart;
+        record(frameStart, elapsed);
+        return elapsed;
+    }
+
+    /** Adds a frame that started at {@code start} ({@link System#nanoTime()}) and took {@code elapsed}. */
+    public void record(long start, long elapsed) {
+        samples[next] = elapsed;
+        starts[next] = start;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) count++;
+        frames++;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public double lastMillis() {
+        if (count == 0) return 0;
+        return samples[(next - 1 + samples.length) % samples.length] / 1e6;
+    }
+
+    /** Frame time at the given percentile (0 to 1) of the buffered frames. */
+    public double percentileMillis(double p) {
+        if (count == 0) return 0;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int i = (int) Math.ceil(p * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, i))] / 1e6;
+    }
+
+    /** Frames started during the last second. */
+    public int framesPerSecond() {
+        long since = System.nanoTime() - 1_000_000_000L;
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (starts[i] - since > 0) n++;
+        }
+        return n;
+    }
+}
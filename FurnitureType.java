@@ -0,0 +1,155 @@
+import java.awt.*;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.RoundRectangle2D;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned furniture kind. Each name maps to exactly one instance with a
+ * small integer id, so furniture can be compared by reference and painted
+ * through its renderer without looking at the name again.
+ *
+ * <p>Bed, Sink and Dining Table are built in. More kinds can be registered
+ * in code or loaded from a catalogue file with one {@code name,shape,#RRGGBB}
+ * entry per line, where shape is one of {@code rect}, {@code oval},
+ * {@code arc} or {@code roundrect}. Names that are not registered, such as
+ * kinds read from a file written with a larger catalogue, are interned on
+ * first use and drawn as grey rectangles.
+ */
+final class FurnitureType {
+    /** Draws one piece of furniture inside the given bounds, relative to its room. */
+    interface Renderer {
+        void paint(Graphics2D g, int x, int y, int width, int height);
+    }
+
+    static final Renderer RECT = Graphics2D::fillRect;
+    static final Renderer OVAL = Graphics2D::fillOval;
+    static final Renderer ARC = (g, x, y, w, h) -> g.fillArc(x, y, w, h, 0, 180);
+    static final Renderer ROUND_RECT = (g, x, y, w, h) -> g.fillRoundRect(x, y, w, h, 8, 8);
+    private static final Color UNKNOWN_COLOR = Color.GRAY;
+
+    private static final ConcurrentHashMap<String, FurnitureType> BY_NAME = new ConcurrentHashMap<>();
+    private static volatile FurnitureType[] byId = new FurnitureType[0];
+
+    static final FurnitureType BED = register("Bed", Color.PINK, RECT);
+    static final FurnitureType SINK = register("Sink", Color.CYAN, ARC);
+    static final FurnitureType DINING_TABLE = register("Dining Table", Color.ORANGE, OVAL);
+
+    final int id;
+    final String name;
+    final Color color;
+    final Renderer renderer;
+
+    private FurnitureType(int id, String name, Color color, Renderer renderer) {
+        this.id = id;
+        this.name = name;
+        this.color = color;
+        this.renderer = renderer;
+    }
+
+    void paint(Graphics2D g, int x, int y, int width, int height) {
+        g.setColor(color);
+        renderer.paint(g, x, y, width, height);
+    }
+
+    /**
+     * Outline for vector export. Built-in shapes map to their exact geometry;
+     * custom renderers fall back to the bounding rectangle.
+     */
+    Shape outline(int x, int y, int width, int height) {
+        if (renderer == OVAL) return new Ellipse2D.Float(x, y, width, height);
+        if (renderer == ARC) return new Arc2D.Float(x, y, width, height, 0, 180, Arc2D.PIE);
+        if (renderer == ROUND_RECT) return new RoundRectangle2D.Float(x, y, width, height, 8, 8);
+        return new Rectangle(x, y, width, height);
+    }
+
+    /**
+     * Registers a kind, or replaces the colour and renderer of an existing one
+     * while keeping its id so that furniture already created stays valid.
+     */
+    static synchronized FurnitureType register(String name, Color color, Renderer renderer) {
+        FurnitureType existing = BY_NAME.get(name);
+        int id = existing != null ? existing.id : byId.length;
+        FurnitureType type = new FurnitureType(id, name, color, renderer);
+        FurnitureType[] next = existing != null ? byId.clone() : Arrays.copyOf(byId, id + 1);
+        next[id] = type;
+        byId = next;
+        BY_NAME.put(name, type);
+        return type;
+    }
+
+    /** The interned kind with the given name, registering a placeholder if it is unknown. */
+    static FurnitureType of(String name) {
+        FurnitureType type = BY_NAME.get(name);
+        if (type != null) return type;
+        synchronized (FurnitureType.class) {
+            type = BY_NAME.get(name);
+            return type != null ? type : register(name, UNKNOWN_COLOR, RECT);
+        }
+    }
+
+    static FurnitureType byId(int id) {
+        return byId[id];
+    }
+
+    /** Every registered kind, in id order. */
+    static FurnitureType[] all() {
+        return byId.clone();
+    }
+
+    /**
+     * Registers every entry of a catalogue file.
+     *
+     * @return the number of kinds read
+     * @throws IOException if the file cannot be read or a line is malformed
+     */
+    static int loadCatalogue(Path path) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split(",");
+                if (parts.length != 3) {
+                    throw new IOException("Line " + lineNumber + ": expected 3 fields but found " + parts.length);
+                }
+                try {
+                    register(parts[0].trim(), Color.decode(parts[2].trim()), shape(parts[1].trim()));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Renderer shape(String name) {
+        switch (name.toLowerCase()) {
+            case "rect":
+                return RECT;
+            case "oval":
+                return OVAL;
+            case "arc":
+                return ARC;
+            case "roundrect":
+                return ROUND_RECT;
+            default:
+                throw new IllegalArgumentException("unknown shape '" + name + "'");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,106 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * Background and grid rasterised once per size, zoom level and background
+ * colour, and blitted on every frame. The image is one grid cell larger than
+ * the view in each direction, so panning only shifts where it is drawn. Uses an
+ * accelerated {@link VolatileImage} when the component has a graphics
+ * configuration and falls back to a {@link BufferedImage} otherwise (headless,
+ * or when the accelerated surface cannot be created).
+ */
+final class GridLayer {
+    private final Component owner;
+    private VolatileImage volatileImage;
+    private BufferedImage bufferedImage;
+    private int width, height, cell;
+    private Color background;
+    private int rasterCount = 0;
+
+    GridLayer(Component owner) {
+        this.owner = owner;
+    }
+
+    /** Number of times the grid has been rasterised, for checking that frames reuse the cache. */
+    public int getRasterCount() {
+        return rasterCount;
+    }
+
+    public void invalidate() {
+        if (volatileImage != null) {
+            volatileImage.flush();
+            volatileImage = null;
+        }
+        bufferedImage = null;
+    }
+
+    /**
+     * Draws the grid for a view of {@code w x h} pixels whose model origin is at
+     * ({@code panX}, {@code panY}) and whose grid cells are {@code cellSize} pixels.
+     */
+    public void paint(Graphics2D g, int w, int h, Color bg, int cellSize, int panX, int panY) {
+        if (w <= 0 || h <= 0) return;
+        if (w + cellSize != width || h + cellSize != height || cellSize != cell || !bg.equals(background)) {
+            invalidate();
+            width = w + cellSize;
+            height = h + cellSize;
+            cell = cellSize;
+            background = bg;
+        }
+        int offsetX = Math.floorMod(panX, cell) - cell;
+        int offsetY = Math.floorMod(panY, cell) - cell;
+
+        GraphicsConfiguration gc = owner.getGraphicsConfiguration();
+        if (gc != null && bufferedImage == null) {
+            if (paintVolatile(g, gc, offsetX, offsetY)) return;
+        }
+        if (bufferedImage == null) {
+            bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D ig = bufferedImage.createGraphics();
+            render(ig);
+            ig.dispose();
+        }
+        g.drawImage(bufferedImage, offsetX, offsetY, null);
+    }
+
+    private boolean paintVolatile(Graphics2D g, GraphicsConfiguration gc, int offsetX, int offsetY) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            if (volatileImage == null) {
+                try {
+                    volatileImage = gc.createCompatibleVolatileImage(width, height);
+                } catch (Exception e) {
+                    return false;
+                }
+                if (volatileImage == null) return false;
+                renderVolatile();
+            }
+            int status = volatileImage.validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                volatileImage.flush();
+                volatileImage = null;
+                continue;
+            }
+            if (status == VolatileImage.IMAGE_RESTORED) {
+                renderVolatile();
+            }
+            g.drawImage(volatileImage, offsetX, offsetY, null);
+            if (!volatileImage.contentsLost()) return true;
+        }
+        return false;
+    }
+
+    private void renderVolatile() {
+        Graphics2D ig = volatileImage.createGraphics();
+        render(ig);
+        ig.dispose();
+    }
+
+    private void render(Graphics2D ig) {
+        rasterCount++;
+        ig.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        ig.setColor(background);
+        ig.fillRect(0, 0, width, height);
+        FloorPlanCanvas.paintGrid(ig, cell, width, height);
+    }
+}
@@ -0,0 +1,324 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Packs rooms onto the grid without overlaps while keeping requested pairs
+ * of rooms next to each other. Runs independent simulated-annealing searches
+ * in parallel on the common fork/join pool until the time budget is spent,
+ * keeps the best one, and finally legalises it so that no two rooms overlap.
+ * Overlaps are found through a {@link SpatialIndex}, so a move costs time in
+ * proportion to the rooms near it rather than to the size of the plan.
+ *
+ * <p>All coordinates inside the solver are in grid cells; the result is in
+ * pixels and aligned to {@link FloorPlan#GRID_SPACING}.
+ */
+final class LayoutSolver {
+    private static final double OVERLAP_WEIGHT = 50.0;
+    private static final double ADJACENCY_WEIGHT = 4.0;
+    private static final double SPREAD_WEIGHT = 0.05;
+    private static final int CHECK_CLOCK_EVERY = 256;
+    /** Index cell size in grid cells, about the size of a room. */
+    private static final int INDEX_CELL = 8;
+
+    private final int n;
+    private final int[] w, h;
+    private final int[] startX, startY;
+    private final int[][] neighbours;
+    private final int cell;
+
+    /**
+     * @param widths     room widths in pixels
+     * @param heights    room heights in pixels
+     * @param xs         current x positions in pixels, used to seed the first search
+     * @param ys         current y positions in pixels
+     * @param adjacency  pairs of room indices that should share a wall
+     */
+    LayoutSolver(int[] widths, int[] heights, int[] xs, int[] ys, List<int[]> adjacency) {
+        this.n = widths.length;
+        this.cell = FloorPlan.GRID_SPACING;
+        this.w = new int[n];
+        this.h = new int[n];
+        this.startX = new int[n];
+        this.startY = new int[n];
+        for (int i = 0; i < n; i++) {
+            w[i] = Math.max(1, (widths[i] + cell - 1) / cell);
+            h[i] = Math.max(1, (heights[i] + cell - 1) / cell);
+            startX[i] = Math.round((float) xs[i] / cell);
+            startY[i] = Math.round((float) ys[i] / cell);
+        }
+        ArrayList<ArrayList<Integer>> adj = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) adj.add(new ArrayList<>());
+        for (int[] pair : adjacency) {
+            if (pair[0] == pair[1]) continue;
+            adj.get(pair[0]).add(pair[1]);
+            adj.get(pair[1]).add(pair[0]);
+        }
+        this.neighbours = new int[n][];
+        for (int i = 0; i < n; i++) {
+            neighbours[i] = adj.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    static final class Layout {
+        final int[] xs, ys;
+        final double energy;
+        final long iterations;
+        final int restarts;
+
+        Layout(int[] xs, int[] ys, double energy, long iterations, int restarts) {
+            this.xs = xs;
+            this.ys = ys;
+            this.energy = energy;
+            this.iterations = iterations;
+            this.restarts = restarts;
+        }
+    }
+
+    /** Solves using one restart per available core. */
+    public Layout solve(long budgetMillis) {
+        return solve(budgetMillis, Runtime.getRuntime().availableProcessors(), 1L);
+    }
+
+    public Layout solve(long budgetMillis, int restarts, long seed) {
+        if (n == 0) {
+            return new Layout(new int[0], new int[0], 0, 0, 0);
+        }
+        long deadline = System.nanoTime() + budgetMillis * 1_000_000L;
+        List<Search> results = IntStream.range(0, Math.max(1, restarts))
+                .parallel()
+                .mapToObj(r -> {
+                    Search s = new Search(new SplittableRandom(seed * 7919 + r), r == 0);
+                    s.run(deadline);
+                    return s;
+                })
+                .collect(Collectors.toList());
+
+        Search best = results.stream().min(Comparator.comparingDouble(s -> s.bestEnergy)).get();
+        long iterations = results.stream().mapToLong(s -> s.iterations).sum();
+        int[] xs = best.bestX.clone();
+        int[] ys = best.bestY.clone();
+        legalise(xs, ys);
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+        }
+        double energy = energy(xs, ys);
+        for (int i = 0; i < n; i++) {
+            xs[i] = (xs[i] - minX + 1) * cell;
+            ys[i] = (ys[i] - minY + 1) * cell;
+        }
+        return new Layout(xs, ys, energy, iterations, results.size());
+    }
+
+    /** One annealing run. Positions, index and energy terms are private to the run, so runs share nothing. */
+    private final class Search {
+        final SplittableRandom random;
+        final int[] x = new int[n], y = new int[n];
+        final Integer[] ids = new Integer[n];
+        SpatialIndex<Integer> index;
+        Overlaps overlaps;
+        int[] bestX, bestY;
+        double bestEnergy = Double.MAX_VALUE;
+        long iterations = 0;
+
+        Search(SplittableRandom random, boolean fromCurrent) {
+            this.random = random;
+            if (fromCurrent) {
+                System.arraycopy(startX, 0, x, 0, n);
+                System.arraycopy(startY, 0, y, 0, n);
+            } else {
+                long area = 0;
+                for (int i = 0; i < n; i++) area += (long) w[i] * h[i];
+                int side = (int) Math.ceil(Math.sqrt(area) * 1.5) + 1;
+                for (int i = 0; i < n; i++) {
+                    x[i] = random.nextInt(side);
+                    y[i] = random.nextInt(side);
+                }
+            }
+        }
+
+        void run(long deadline) {
+            bestX = x.clone();
+            bestY = y.clone();
+            if (System.nanoTime() >= deadline) return;
+            for (int i = 0; i < n; i++) ids[i] = i;
+            index = index(x, y);
+            overlaps = new Overlaps(index, x, y);
+            double current = energy(overlaps);
+            bestEnergy = current;
+            long start = System.nanoTime();
+            long span = Math.max(1, deadline - start);
+            double t0 = 10.0, t1 = 0.01;
+            double temperature = t0;
+
+            while (true) {
+                if ((iterations & (CHECK_CLOCK_EVERY - 1)) == 0) {
+                    long now = System.nanoTime();
+                    if (now >= deadline) break;
+                    double progress = (double) (now - start) / span;
+                    temperature = t0 * Math.pow(t1 / t0, progress);
+                }
+                iterations++;
+
+                int i = random.nextInt(n);
+                int oldX = x[i], oldY = y[i];
+                int newX, newY;
+                if (neighbours[i].length > 0 && random.nextInt(4) == 0) {
+                    int j = neighbours[i][random.nextInt(neighbours[i].length)];
+                    switch (random.nextInt(4)) {
+                        case 0: newX = x[j] + w[j]; newY = y[j]; break;
+                        case 1: newX = x[j] - w[i]; newY = y[j]; break;
+                        case 2: newX = x[j]; newY = y[j] + h[j]; break;
+                        default: newX = x[j]; newY = y[j] - h[i]; break;
+                    }
+                } else {
+                    int step = Math.max(1, (int) Math.ceil(temperature));
+                    newX = oldX + random.nextInt(2 * step + 1) - step;
+                    newY = oldY + random.nextInt(2 * step + 1) - step;
+                }
+                if (newX == oldX && newY == oldY) continue;
+
+                double before = localEnergy(i);
+                x[i] = newX;
+                y[i] = newY;
+                index.update(ids[i], newX, newY, w[i], h[i]);
+                double delta = localEnergy(i) - before;
+                if (delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature)) {
+                    current += delta;
+                    if (current < bestEnergy - 1e-9) {
+                        bestEnergy = current;
+                        System.arraycopy(x, 0, bestX, 0, n);
+                        System.arraycopy(y, 0, bestY, 0, n);
+                    }
+                } else {
+                    x[i] = oldX;
+                    y[i] = oldY;
+                    index.update(ids[i], oldX, oldY, w[i], h[i]);
+                }
+            }
+        }
+
+        /** Energy terms that involve room {@code i}; moving {@code i} changes total energy by exactly this much. */
+        private double localEnergy(int i) {
+            double e = OVERLAP_WEIGHT * overlaps.of(i, false);
+            for (int j : neighbours[i]) {
+                e += ADJACENCY_WEIGHT * gap(i, j, x, y);
+            }
+            return e + SPREAD_WEIGHT * (Math.abs(x[i]) + Math.abs(y[i]));
+        }
+    }
+
+    /** Sums the overlap of one room with the rooms it intersects, found through the index. */
+    private final class Overlaps implements Consumer<Integer> {
+        final SpatialIndex<Integer> index;
+        final int[] x, y;
+        private int room;
+        private boolean laterOnly;
+        private long sum;
+
+        Overlaps(SpatialIndex<Integer> index, int[] x, int[] y) {
+            this.index = index;
+            this.x = x;
+            this.y = y;
+        }
+
+        /** Overlap of room {@code i} with every other room, or only with those of a higher index. */
+        long of(int i, boolean laterOnly) {
+            room = i;
+            this.laterOnly = laterOnly;
+            sum = 0;
+            index.query(x[i], y[i], w[i], h[i], this);
+            return sum;
+        }
+
+        @Override
+        public void accept(Integer j) {
+            if (j != room && (!laterOnly || j > room)) sum += overlap(room, j, x, y);
+        }
+    }
+
+    double energy(int[] x, int[] y) {
+        return energy(new Overlaps(index(x, y), x, y));
+    }
+
+    private double energy(Overlaps overlaps) {
+        int[] x = overlaps.x, y = overlaps.y;
+        double e = 0;
+        for (int i = 0; i < n; i++) {
+            e += OVERLAP_WEIGHT * overlaps.of(i, true);
+            for (int j : neighbours[i]) {
+                if (j > i) e += ADJACENCY_WEIGHT * gap(i, j, x, y);
+            }
+            e += SPREAD_WEIGHT * (Math.abs(x[i]) + Math.abs(y[i]));
+        }
+        return e;
+    }
+
+    private SpatialIndex<Integer> index(int[] x, int[] y) {
+        SpatialIndex<Integer> index = new SpatialIndex<>(INDEX_CELL);
+        for (int i = 0; i < n; i++) {
+            index.insert(i, x[i], y[i], w[i], h[i]);
+        }
+        return index;
+    }
+
+    private long overlap(int i, int j, int[] x, int[] y) {
+        int ox = Math.min(x[i] + w[i], x[j] + w[j]) - Math.max(x[i], x[j]);
+        if (ox <= 0) return 0;
+        int oy = Math.min(y[i] + h[i], y[j] + h[j]) - Math.max(y[i], y[j]);
+        if (oy <= 0) return 0;
+        return (long) ox * oy;
+    }
+
+    /** Cells separating two rooms; 0 when they share at least one cell of wall. */
+    private int gap(int i, int j, int[] x, int[] y) {
+        int gx = Math.max(x[i] - (x[j] + w[j]), x[j] - (x[i] + w[i]));
+        int gy = Math.max(y[i] - (y[j] + h[j]), y[j] - (y[i] + h[i]));
+        int g = Math.max(0, gx) + Math.max(0, gy);
+        if (gx >= 0 && gy >= 0) g += 1;
+        return g;
+    }
+
+    /**
+     * Moves every room that still overlaps an earlier one to a nearby free
+     * position, searching outwards ring by ring. Beyond eight cells the
+     * rings, and the positions on them, are spaced {@code r / 8} apart, so a
+     * room pushed out of a crowded area costs a few hundred probes rather
+     * than one per cell it moves.
+     */
+    private void legalise(int[] x, int[] y) {
+        SpatialIndex<Integer> placed = new SpatialIndex<>(INDEX_CELL);
+        for (int i = 0; i < n; i++) {
+            if (placed.findIntersecting(x[i], y[i], w[i], h[i], -1) != null) {
+                for (int r = 1; !moveToRing(placed, i, r, x, y); r += Math.max(1, r / 8)) {
+                    // try the next ring
+                }
+            }
+            placed.insert(i, x[i], y[i], w[i], h[i]);
+        }
+    }
+
+    /** Moves room {@code i} to the first free position found {@code r} cells away, if any. */
+    private boolean moveToRing(SpatialIndex<Integer> placed, int i, int r, int[] x, int[] y) {
+        int step = Math.max(1, r / 8);
+        for (int d = -r; d <= r; d = d < r && d + step > r ? r : d + step) {
+            if (moveIfFree(placed, i, d, -r, x, y) || moveIfFree(placed, i, d, r, x, y)) return true;
+            if (d != -r && d != r && (moveIfFree(placed, i, -r, d, x, y) || moveIfFree(placed, i, r, d, x, y))) return true;
+        }
+        return false;
+    }
+
+    private boolean moveIfFree(SpatialIndex<Integer> placed, int i, int dx, int dy, int[] x, int[] y) {
+        if (placed.findIntersecting(x[i] + dx, y[i] + dy, w[i], h[i], -1) != null) return false;
+        x[i] += dx;
+        y[i] += dy;
+        return true;
+    }
+}
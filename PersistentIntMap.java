@@ -0,0 +1,261 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable map from non-negative int keys to non-null values, iterated in
+ * ascending key order. It is a 32-way trie whose nodes store only the slots
+ * in use and which grows a level whenever a key needs five more bits, so an
+ * update copies the few nodes on one path, three for keys below 32768, and
+ * shares the rest with the map it came from. Old versions stay valid and can
+ * be read from any thread while newer ones are built.
+ *
+ * <p>A {@link Builder} applies many updates to one version without copying a
+ * node more than once: nodes it has copied belong to it and are changed in
+ * place until {@link Builder#build} hands them out.
+ */
+final class PersistentIntMap<V> implements Iterable<V> {
+    private static final int BITS = 5;
+    private static final int MAX_SHIFT = 30;
+    private static final Object[] NO_SLOTS = new Object[0];
+    private static final PersistentIntMap<Object> EMPTY = new PersistentIntMap<>(null, 0, 0);
+
+    private final Node root;
+    /** Shift of the root level; the map holds keys below {@code 1 << (shift + BITS)}. */
+    private final int shift;
+    private final int size;
+
+    /** Slot {@code i} holds the child for the i-th set bit of {@code bitmap}; leaves hold values. */
+    private static final class Node {
+        int bitmap;
+        Object[] slots;
+        final Object owner;
+
+        Node(int bitmap, Object[] slots, Object owner) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+            this.owner = owner;
+        }
+    }
+
+    private PersistentIntMap(Node root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    V get(int key) {
+        return find(root, shift, key);
+    }
+
+    PersistentIntMap<V> put(int key, V value) {
+        checkKey(key);
+        if (value == null) throw new NullPointerException("value");
+        boolean added = get(key) == null;
+        int top = shiftFor(shift, key);
+        Node next = put(grow(root, shift, top, null), top, key, value, null);
+        return next == root ? this : new PersistentIntMap<>(next, top, added ? size + 1 : size);
+    }
+
+    PersistentIntMap<V> remove(int key) {
+        if (get(key) == null) return this;
+        Node next = remove(root, shift, key, null);
+        return next == null ? empty() : new PersistentIntMap<>(next, shift, size - 1);
+    }
+
+    Builder<V> builder() {
+        return new Builder<>(this);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new Iterator<V>() {
+            private final int leaf = shift / BITS;
+            private final Node[] nodes = new Node[leaf + 1];
+            private final int[] positions = new int[leaf + 1];
+            private int depth = -1;
+            private Object next;
+
+            {
+                if (root != null) {
+                    nodes[0] = root;
+                    depth = 0;
+                }
+                advance();
+            }
+
+            private void advance() {
+                next = null;
+                while (depth >= 0) {
+                    Node node = nodes[depth];
+                    if (positions[depth] >= Integer.bitCount(node.bitmap)) {
+                        depth--;
+                        continue;
+                    }
+                    Object slot = node.slots[positions[depth]++];
+                    if (depth == leaf) {
+                        next = slot;
+                        return;
+                    }
+                    nodes[++depth] = (Node) slot;
+                    positions[depth] = 0;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (next == null) throw new NoSuchElementException();
+                V value = (V) next;
+                advance();
+                return value;
+            }
+        };
+    }
+
+    /** Applies updates to a private copy of one version, then publishes them as a new version. */
+    static final class Builder<V> {
+        private Object owner = new Object();
+        private Node root;
+        private int shift;
+        private int size;
+
+        private Builder(PersistentIntMap<V> from) {
+            root = from.root;
+            shift = from.shift;
+            size = from.size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        V get(int key) {
+            return find(root, shift, key);
+        }
+
+        Builder<V> put(int key, V value) {
+            checkKey(key);
+            if (value == null) throw new NullPointerException("value");
+            if (get(key) == null) size++;
+            int top = shiftFor(shift, key);
+            root = PersistentIntMap.put(grow(root, shift, top, owner), top, key, value, owner);
+            shift = top;
+            return this;
+        }
+
+        Builder<V> remove(int key) {
+            if (get(key) != null) {
+                size--;
+                root = PersistentIntMap.remove(root, shift, key, owner);
+                if (root == null) shift = 0;
+            }
+            return this;
+        }
+
+        /** The current contents as a map; later updates through this builder do not affect it. */
+        PersistentIntMap<V> build() {
+            owner = new Object();
+            return root == null ? empty() : new PersistentIntMap<>(root, shift, size);
+        }
+    }
+
+    private static void checkKey(int key) {
+        if (key < 0) throw new IllegalArgumentException("Negative key " + key);
+    }
+
+    /** Root shift needed to hold {@code key} in a trie whose root is now at {@code shift}. */
+    private static int shiftFor(int shift, int key) {
+        while (shift < MAX_SHIFT && key >>> (shift + BITS) != 0) {
+            shift += BITS;
+        }
+        return shift;
+    }
+
+    /** Puts {@code root} under new levels of single-slot nodes until its shift is {@code top}. */
+    private static Node grow(Node root, int shift, int top, Object owner) {
+        if (root == null) return null;
+        for (; shift < top; shift += BITS) {
+            root = new Node(1, new Object[]{root}, owner);
+        }
+        return root;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V find(Node node, int shift, int key) {
+        if (key < 0 || (shift < MAX_SHIFT && key >>> (shift + BITS) != 0)) return null;
+        for (; node != null; shift -= BITS) {
+            int bit = 1 << ((key >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) return null;
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (shift == 0) return (V) slot;
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    /** Returns {@code node} with the key set, changing it in place only if {@code owner} owns it. */
+    private static Node put(Node node, int shift, int key, Object value, Object owner) {
+        if (node == null) node = new Node(0, NO_SLOTS, owner);
+        int bit = 1 << ((key >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        boolean present = (node.bitmap & bit) != 0;
+        Object child = shift == 0 ? value : put(present ? (Node) node.slots[index] : null, shift - BITS, key, value, owner);
+        if (present && node.slots[index] == child) return node;
+        boolean owned = owner != null && node.owner == owner;
+        Object[] slots;
+        if (present) {
+            slots = owned ? node.slots : node.slots.clone();
+            slots[index] = child;
+        } else {
+            slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, index);
+            slots[index] = child;
+            System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+        }
+        if (!owned) return new Node(node.bitmap | bit, slots, owner);
+        node.bitmap |= bit;
+        node.slots = slots;
+        return node;
+    }
+
+    /** Returns {@code node} without the key, or {@code null} once it is empty. */
+    private static Node remove(Node node, int shift, int key, Object owner) {
+        int bit = 1 << ((key >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object child = shift == 0 ? null : remove((Node) node.slots[index], shift - BITS, key, owner);
+        boolean owned = owner != null && node.owner == owner;
+        if (child != null) {
+            if (node.slots[index] == child) return node;
+            Object[] slots = owned ? node.slots : node.slots.clone();
+            slots[index] = child;
+            if (owned) return node;
+            return new Node(node.bitmap, slots, owner);
+        }
+        if (node.bitmap == bit) return null;
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+        if (!owned) return new Node(node.bitmap & ~bit, slots, owner);
+        node.bitmap &= ~bit;
+        node.slots = slots;
+        return node;
+    }
+}
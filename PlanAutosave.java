@@ -0,0 +1,227 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Background autosave for a {@link FloorPlan}. Every committed batch is
+ * appended to a write-ahead journal by a single writer thread; the thread
+ * that mutates the plan only queues the batch's immutable rooms and never
+ * touches the disk. Once the journal grows past a threshold the current rooms
+ * are written as a snapshot with {@link PlanFile#save}, which replaces the old
+ * one atomically, and the journal is truncated.
+ *
+ * <p>Journal records are {@code u32 length, payload, u32 CRC-32} where the
+ * payload is one {@link PlanOps} op. Ops carry whole values, so replaying a journal that was already
+ * folded into the snapshot (a crash between the rename and the truncate) gives
+ * the same rooms. {@link #recover} stops at the first torn or corrupt record.
+ * Paint-order changes from {@link FloorPlan#bringToFront} are not journaled.
+ */
+final class PlanAutosave {
+    static final String SNAPSHOT_NAME = "autosave.fpl";
+    static final String JOURNAL_NAME = "autosave.journal";
+    static final long DEFAULT_COMPACT_BYTES = 4L << 20;
+
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private final FloorPlan plan;
+    private final Path snapshot;
+    private final Path journal;
+    private final long compactBytes;
+    private final FloorPlan.Listener listener = this::planChanged;
+    private final ThreadPoolExecutor writer;
+    private FileChannel channel; // writer thread only
+    private volatile long journalBytes = 0;
+    private volatile IOException lastError;
+    private volatile boolean compactPending = false;
+
+    /**
+     * Starts journaling {@code plan}. The plan's current rooms are written as
+     * the first snapshot, replacing whatever the directory held before, so
+     * call {@link #recover} first if that state is wanted. Files are opened on
+     * the writer thread; failures are reported through {@link #getLastError}.
+     */
+    PlanAutosave(FloorPlan plan, Path dir, long compactBytes) {
+        this.plan = plan;
+        this.snapshot = dir.resolve(SNAPSHOT_NAME);
+        this.journal = dir.resolve(JOURNAL_NAME);
+        this.compactBytes = compactBytes;
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "autosave");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.execute(() -> {
+            try {
+                Files.createDirectories(dir);
+                channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+        compact();
+        plan.addListener(listener);
+    }
+
+    /** True when {@code dir} holds a snapshot or a non-empty journal. */
+    static boolean hasSavedState(Path dir) throws IOException {
+        Path journal = dir.resolve(JOURNAL_NAME);
+        return Files.exists(dir.resolve(SNAPSHOT_NAME)) || (Files.exists(journal) && Files.size(journal) > 0);
+    }
+
+    /** Rebuilds the autosaved rooms: the snapshot with the journal replayed on top. */
+    static List<Room> recover(Path dir) throws IOException {
+        LinkedHashMap<Integer, Room> rooms = new LinkedHashMap<>();
+        Path snapshot = dir.resolve(SNAPSHOT_NAME);
+        if (Files.exists(snapshot)) {
+            for (Room room : PlanFile.readBinary(snapshot)) {
+                rooms.put(room.id, room);
+            }
+        }
+        Path journal = dir.resolve(JOURNAL_NAME);
+        if (Files.exists(journal)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal), 1 << 16))) {
+                byte[] payload;
+                while ((payload = readRecord(in)) != null) {
+                    PlanOps.apply(payload, rooms);
+                }
+            }
+        }
+        return new ArrayList<>(rooms.values());
+    }
+
+    /** The last write failure, or {@code null}. Autosave keeps trying after a failure. */
+    IOException getLastError() {
+        return lastError;
+    }
+
+    long getJournalBytes() {
+        return journalBytes;
+    }
+
+    /** Waits until everything queued so far is on disk. For tests and shutdown. */
+    void flush() throws InterruptedException {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stops journaling and deletes the autosave files, after the queued writes
+     * have finished. Used on a normal exit, when there is nothing to recover.
+     */
+    void discard() {
+        plan.removeListener(listener);
+        writer.execute(() -> {
+            try {
+                if (channel != null) channel.close();
+                Files.deleteIfExists(journal);
+                Files.deleteIfExists(snapshot);
+            } catch (IOException e) {
+                lastError = e;
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void planChanged(FloorPlan.Change change) {
+        writer.execute(() -> append(change));
+        if (!compactPending && journalBytes >= compactBytes) {
+            compact();
+        }
+    }
+
+    /** Queues a rewrite of the snapshot file from the plan's current snapshot. */
+    private void compact() {
+        compactPending = true;
+        Collection<Room> rooms = plan.snapshot().rooms();
+        writer.execute(() -> {
+            if (channel == null) return;
+            try {
+                PlanFile.save(rooms, snapshot);
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+                journalBytes = 0;
+            } catch (IOException e) {
+                fail(e);
+            }
+        });
+        writer.execute(() -> compactPending = false);
+    }
+
+    private void append(FloorPlan.Change change) {
+        if (channel == null) return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (byte[] op : PlanOps.encode(change)) {
+                writeRecord(out, op);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            journalBytes += bytes.size();
+            // group commit: sync once the writer has caught up with the queue
+            if (writer.getQueue().isEmpty()) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        if (lastError == null) {
+            System.err.println("Autosave failed: " + e);
+        }
+        lastError = e;
+    }
+
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /** The next intact record's payload, or {@code null} at the end or at a torn tail. */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES) return null;
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return in.readInt() == (int) crc.getValue() ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reads and writes project files.
+ *
+ * <p>The binary format is big-endian and made of fixed-width sections so it
+ * can be decoded straight out of a memory-mapped buffer:
+ * <pre>
+ *   header     magic "FPLN", u16 version, u16 reserved, room, door, window,
+ *              furniture and string counts, string table offset   (32 bytes)
+ *   rooms      id, name ref, x, y, width, height, ARGB colour,
+ *              door, window and furniture counts                  (40 bytes each)
+ *   doors      x, y, width, height, in room order                 (16 bytes each)
+ *   windows    x, y, width, height, in room order                 (16 bytes each)
+ *   furniture  type ref, x, y, width, height, in room order       (20 bytes each)
+ *   strings    u32 byte length followed by UTF-8 bytes, per entry
+ * </pre>
+ * Room names and furniture types are stored once in the string table and
+ * referenced by index. Files that do not start with the magic number are read
+ * as the legacy comma-separated format (name, x, y, width, height, RGB).
+ * Multi-floor buildings use version 2, a container of version 1 documents
+ * described in {@link Building}.
+ */
+final class PlanFile {
+    static final int MAGIC = 0x46504C4E;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int ROOM_BYTES = 40;
+    static final int OPENING_BYTES = 16;
+    static final int FURNITURE_BYTES = 20;
+
+    private PlanFile() {}
+
+    /**
+     * Writes the legacy CSV format when the file name ends in ".csv", the binary
+     * format otherwise. The data goes to a temporary file in the same directory
+     * that is synced and then renamed over {@code path}, so a crash leaves
+     * either the old file or the new one, never a truncated mix.
+     */
+    static void save(Collection<Room> rooms, Path path) throws IOException {
+        PlanMetrics.FileEvent event = PlanMetrics.beginFile("save", path);
+        Path temp = createTempFor(path);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 OutputStream out = Channels.newOutputStream(channel)) {
+                if (isCsv(path)) {
+                    writeCsv(rooms, out);
+                } else {
+                    writeBinary(rooms, out);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        PlanMetrics.get().endFile(event, rooms.size());
+    }
+
+    /**
+     * Creates an empty file next to {@code path} to be renamed over it.
+     * {@link Files#createTempFile} would make it readable by the owner only,
+     * so it is created with default permissions instead and given those of
+     * {@code path} if that exists; a save then keeps the file's permissions.
+     */
+    static Path createTempFor(Path path) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        Path temp;
+        while (true) {
+            temp = dir.resolve(path.getFileName() + "." + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+            try {
+                Files.newByteChannel(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+                break;
+            } catch (FileAlreadyExistsException e) {
+                // taken; try another name
+            }
+        }
+        try {
+            PosixFileAttributeView target = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+            if (target != null && Files.exists(path)) {
+                Files.setPosixFilePermissions(temp, target.readAttributes().permissions());
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    static List<Room> read(Path path) throws IOException {
+        PlanMetrics.FileEvent event = PlanMetrics.beginFile("load", path);
+        List<Room> rooms = isBinary(path) ? readBinary(path) : readCsv(path);
+        PlanMetrics.get().endFile(event, rooms.size());
+        return rooms;
+    }
+
+    static boolean isCsv(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".csv");
+    }
+
+    static boolean isBinary(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    static void writeBinary(Collection<Room> rooms, Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            writeBinary(rooms, out);
+        }
+    }
+
+    static void writeBinary(Collection<Room> rooms, OutputStream target) throws IOException {
+        ArrayList<String> strings = new ArrayList<>();
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        int doorCount = 0, windowCount = 0, furnitureCount = 0;
+        for (Room room : rooms) {
+            intern(room.name, strings, stringIds);
+            for (int f = 0; f < room.furniture.size(); f++) {
+                intern(room.furniture.type(f).name, strings, stringIds);
+            }
+            doorCount += room.doors.size();
+            windowCount += room.windows.size();
+            furnitureCount += room.furniture.size();
+        }
+        long stringOffset = HEADER_BYTES + (long) rooms.size() * ROOM_BYTES + (long) doorCount * OPENING_BYTES
+                + (long) windowCount * OPENING_BYTES + (long) furnitureCount * FURNITURE_BYTES;
+        if (stringOffset > Integer.MAX_VALUE) {
+            throw new IOException("Plan too large for format version " + VERSION);
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(target, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(rooms.size());
+        out.writeInt(doorCount);
+        out.writeInt(windowCount);
+        out.writeInt(furnitureCount);
+        out.writeInt(strings.size());
+        out.writeInt((int) stringOffset);
+
+        for (Room room : rooms) {
+            out.writeInt(room.id);
+            out.writeInt(stringIds.get(room.name));
+            out.writeInt(room.x);
+            out.writeInt(room.y);
+            out.writeInt(room.width);
+            out.writeInt(room.height);
+            out.writeInt(room.color);
+            out.writeInt(room.doors.size());
+            out.writeInt(room.windows.size());
+            out.writeInt(room.furniture.size());
+        }
+        for (Room room : rooms) {
+            writeRects(out, room.doors);
+        }
+        for (Room room : rooms) {
+            writeRects(out, room.windows);
+        }
+        for (Room room : rooms) {
+            ElementGeometry furniture = room.furniture;
+            for (int f = 0; f < furniture.size(); f++) {
+                out.writeInt(stringIds.get(furniture.type(f).name));
+                out.writeInt(furniture.x(f));
+                out.writeInt(furniture.y(f));
+                out.writeInt(furniture.width(f));
+                out.writeInt(furniture.height(f));
+            }
+        }
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.flush();
+    }
+
+    private static void writeRects(DataOutputStream out, ElementGeometry rects) throws IOException {
+        for (int i = 0; i < rects.size(); i++) {
+            out.writeInt(rects.x(i));
+            out.writeInt(rects.y(i));
+            out.writeInt(rects.width(i));
+            out.writeInt(rects.height(i));
+        }
+    }
+
+    private static void intern(String s, ArrayList<String> strings, HashMap<String, Integer> ids) {
+        if (!ids.containsKey(s)) {
+            ids.put(s, strings.size());
+            strings.add(s);
+        }
+    }
+
+    static List<Room> readBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Project file too large: " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return decode(buffer);
+        }
+    }
+
+    static List<Room> decode(ByteBuffer buf) throws IOException {
+        try {
+            if (buf.getInt(0) != MAGIC) {
+                throw new IOException("Not a floor plan project file");
+            }
+            int version = buf.getShort(4) & 0xffff;
+            if (version == Building.VERSION) {
+                throw new IOException("Multi-floor building file; open it as a Building");
+            }
+            if (version > VERSION) {
+                throw new IOException("Unsupported project file version " + version);
+            }
+            int roomCount = buf.getInt(8);
+            int doorCount = buf.getInt(12);
+            int windowCount = buf.getInt(16);
+            int furnitureCount = buf.getInt(20);
+            int stringCount = buf.getInt(24);
+            int stringOffset = buf.getInt(28);
+            if (roomCount < 0 || doorCount < 0 || windowCount < 0 || furnitureCount < 0 || stringCount < 0) {
+                throw new IOException("Corrupt project file header");
+            }
+
+            String[] strings = new String[stringCount];
+            int pos = stringOffset;
+            for (int i = 0; i < stringCount; i++) {
+                int len = buf.getInt(pos);
+                byte[] bytes = new byte[len];
+                buf.get(pos + 4, bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                pos += 4 + len;
+            }
+
+            int roomPos = HEADER_BYTES;
+            int doorPos = roomPos + roomCount * ROOM_BYTES;
+            int windowPos = doorPos + doorCount * OPENING_BYTES;
+            int furniturePos = windowPos + windowCount * OPENING_BYTES;
+
+            IntBuffer ints = buf.asIntBuffer();
+            int[] typeIds = new int[stringCount];
+            Arrays.fill(typeIds, -1);
+            ArrayList<Room> rooms = new ArrayList<>(roomCount);
+            for (int i = 0; i < roomCount; i++, roomPos += ROOM_BYTES) {
+                int nDoors = buf.getInt(roomPos + 28);
+                int nWindows = buf.getInt(roomPos + 32);
+                int nFurniture = buf.getInt(roomPos + 36);
+
+                int[] doorRects = new int[nDoors * ElementGeometry.STRIDE];
+                ints.get(doorPos / 4, doorRects);
+                doorPos += nDoors * OPENING_BYTES;
+                int[] windowRects = new int[nWindows * ElementGeometry.STRIDE];
+                ints.get(windowPos / 4, windowRects);
+                windowPos += nWindows * OPENING_BYTES;
+
+                int[] furnitureRects = new int[nFurniture * ElementGeometry.STRIDE];
+                int[] kinds = new int[nFurniture];
+                for (int f = 0; f < nFurniture; f++, furniturePos += FURNITURE_BYTES) {
+                    int ref = buf.getInt(furniturePos);
+                    if (typeIds[ref] < 0) typeIds[ref] = FurnitureType.of(strings[ref]).id;
+                    kinds[f] = typeIds[ref];
+                    ints.get(furniturePos / 4 + 1, furnitureRects, f * ElementGeometry.STRIDE, ElementGeometry.STRIDE);
+                }
+                ElementGeometry doors = ElementGeometry.wrap(doorRects, null);
+                ElementGeometry windows = ElementGeometry.wrap(windowRects, null);
+                ElementGeometry furniture = ElementGeometry.wrap(furnitureRects, kinds);
+
+                rooms.add(new Room(buf.getInt(roomPos), strings[buf.getInt(roomPos + 4)],
+                        buf.getInt(roomPos + 8), buf.getInt(roomPos + 12), buf.getInt(roomPos + 16),
+                        buf.getInt(roomPos + 20), buf.getInt(roomPos + 24), doors, windows, furniture));
+            }
+            return rooms;
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt or truncated project file", e);
+        }
+    }
+
+    static void writeCsv(Collection<Room> rooms, Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            writeCsv(rooms, out);
+        }
+    }
+
+    static void writeCsv(Collection<Room> rooms, OutputStream target) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 1 << 16);
+        for (Room room : rooms) {
+            writer.write(room.name + "," + room.x + "," + room.y + "," + room.width + "," + room.height + "," + room.color + "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads the legacy format. Blank lines are skipped; any other malformed
+     * line fails the read with its line number, so a damaged file is never
+     * taken for a smaller one.
+     */
+    static List<Room> readCsv(Path path) throws IOException {
+        ArrayList<Room> rooms = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                try {
+                    rooms.add(parseCsvLine(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return rooms;
+    }
+
+    /**
+     * Parses one legacy line. The colour is read as opaque RGB, as it always was.
+     *
+     * @throws IllegalArgumentException if the line does not have six fields or a number is invalid
+     */
+    static Room parseCsvLine(String line) {
+        String[] parts = line.split(",");
+        if (parts.length != 6) {
+            throw new IllegalArgumentException("expected 6 fields but found " + parts.length);
+        }
+        return new Room(parts[0], parseField(parts[1], "x"), parseField(parts[2], "y"),
+                parseField(parts[3], "width"), parseField(parts[4], "height"),
+                parseField(parts[5], "color") | 0xFF000000);
+    }
+
+    private static int parseField(String value, String field) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid " + field + " '" + value + "'");
+        }
+    }
+}
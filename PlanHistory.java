@@ -0,0 +1,291 @@
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+/**
+ * Undo history for a {@link FloorPlan}. Every committed batch becomes one
+ * undoable edit, or, between {@link #beginGroup()} and {@link #endGroup()},
+ * all batches of a gesture such as a drag are merged into one. Edits store
+ * deltas rather than snapshots: a move or resize keeps only the room id and
+ * its old and new bounds, while additions, removals and content changes keep
+ * the affected room values.
+ *
+ * <p>The history is bounded both by edit count and by an estimate of the heap
+ * its edits retain; the oldest edits are discarded once either cap is hit.
+ */
+final class PlanHistory extends UndoManager {
+    static final long DEFAULT_BUDGET_BYTES = 16L << 20;
+
+    private final FloorPlan plan;
+    private final long budgetBytes;
+    private long retainedBytes = 0;
+    private boolean applying = false;
+    private int groupDepth = 0;
+    private LinkedHashMap<Integer, Room[]> group;
+
+    PlanHistory(FloorPlan plan, long budgetBytes, int maxEdits) {
+        this.plan = plan;
+        this.budgetBytes = budgetBytes;
+        setLimit(maxEdits);
+        plan.addListener(this::planChanged);
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /** Starts merging committed batches into a single edit. Groups nest. */
+    public void beginGroup() {
+        if (groupDepth++ == 0) {
+            group = new LinkedHashMap<>();
+        }
+    }
+
+    public void endGroup() {
+        if (groupDepth == 0) return;
+        if (--groupDepth > 0) return;
+        LinkedHashMap<Integer, Room[]> merged = group;
+        group = null;
+        PlanEdit edit = PlanEdit.of(plan, merged.values());
+        if (edit != null) addEdit(edit);
+    }
+
+    private void planChanged(FloorPlan.Change change) {
+        if (applying) return;
+        if (group != null) {
+            for (FloorPlan.Edit e : change.edits) {
+                Room[] pair = group.get(id(e));
+                if (pair == null) {
+                    group.put(id(e), new Room[]{e.before, e.after});
+                } else {
+                    pair[1] = e.after;
+                }
+            }
+            return;
+        }
+        ArrayList<Room[]> pairs = new ArrayList<>(change.edits.size());
+        for (FloorPlan.Edit e : change.edits) {
+            pairs.add(new Room[]{e.before, e.after});
+        }
+        PlanEdit edit = PlanEdit.of(plan, pairs);
+        if (edit != null) addEdit(edit);
+    }
+
+    private static int id(FloorPlan.Edit e) {
+        return e.before != null ? e.before.id : e.after.id;
+    }
+
+    @Override
+    public synchronized boolean addEdit(UndoableEdit anEdit) {
+        boolean added = super.addEdit(anEdit);
+        if (added && anEdit instanceof PlanEdit) {
+            retainedBytes += ((PlanEdit) anEdit).bytes;
+            while (retainedBytes > budgetBytes && edits.size() > 1) {
+                trimEdits(0, 0);
+            }
+        }
+        return added;
+    }
+
+    @Override
+    protected void trimEdits(int from, int to) {
+        for (int i = from; i <= to && i < edits.size(); i++) {
+            UndoableEdit e = edits.get(i);
+            if (e instanceof PlanEdit) retainedBytes -= ((PlanEdit) e).bytes;
+        }
+        super.trimEdits(from, to);
+    }
+
+    @Override
+    public synchronized void discardAllEdits() {
+        super.discardAllEdits();
+        retainedBytes = 0;
+    }
+
+    @Override
+    public synchronized void undo() throws CannotUndoException {
+        applying = true;
+        try {
+            plan.batch(super::undo);
+        } finally {
+            applying = false;
+        }
+    }
+
+    @Override
+    public synchronized void redo() throws CannotRedoException {
+        applying = true;
+        try {
+            plan.batch(super::redo);
+        } finally {
+            applying = false;
+        }
+    }
+
+    /**
+     * Runs {@code body} without recording its changes, for edits that did not
+     * originate here, such as a collaborator's. Undo skips rooms such edits
+     * have since added or removed.
+     */
+    public void untracked(Runnable body) {
+        boolean was = applying;
+        applying = true;
+        try {
+            body.run();
+        } finally {
+            applying = was;
+        }
+    }
+
+    /** Compact record of one batch or gesture. */
+    static final class PlanEdit extends AbstractUndoableEdit {
+        private static final int MOVE_INTS = 9;
+
+        private final FloorPlan plan;
+        private final int[] moves;
+        private final Room[] added;
+        private final Room[] removed;
+        private final Room[] changedBefore;
+        private final Room[] changedAfter;
+        final long bytes;
+
+        private PlanEdit(FloorPlan plan, int[] moves, Room[] added, Room[] removed,
+                         Room[] changedBefore, Room[] changedAfter) {
+            this.plan = plan;
+            this.moves = moves;
+            this.added = added;
+            this.removed = removed;
+            this.changedBefore = changedBefore;
+            this.changedAfter = changedAfter;
+            long size = 96 + 4L * moves.length;
+            for (Room r : added) size += estimateBytes(r);
+            for (Room r : removed) size += estimateBytes(r);
+            for (int i = 0; i < changedBefore.length; i++) {
+                size += 16 + contentDeltaBytes(changedBefore[i], changedAfter[i]);
+            }
+            this.bytes = size;
+        }
+
+        /** Builds an edit from before/after pairs, or returns null if nothing changed. */
+        static PlanEdit of(FloorPlan plan, Iterable<Room[]> pairs) {
+            ArrayList<Room> added = new ArrayList<>();
+            ArrayList<Room> removed = new ArrayList<>();
+            ArrayList<Room> before = new ArrayList<>();
+            ArrayList<Room> after = new ArrayList<>();
+            int[] moves = new int[0];
+            int moveCount = 0;
+            for (Room[] p : pairs) {
+                Room b = p[0], a = p[1];
+                if (b == a) continue;
+                if (b == null) {
+                    added.add(a);
+                } else if (a == null) {
+                    removed.add(b);
+                } else if (sameContent(b, a)) {
+                    if (b.x == a.x && b.y == a.y && b.width == a.width && b.height == a.height) continue;
+                    if (moveCount * MOVE_INTS == moves.length) {
+                        moves = Arrays.copyOf(moves, Math.max(MOVE_INTS, moves.length * 2));
+                    }
+                    int o = moveCount++ * MOVE_INTS;
+                    moves[o] = b.id;
+                    moves[o + 1] = b.x;
+                    moves[o + 2] = b.y;
+                    moves[o + 3] = b.width;
+                    moves[o + 4] = b.height;
+                    moves[o + 5] = a.x;
+                    moves[o + 6] = a.y;
+                    moves[o + 7] = a.width;
+                    moves[o + 8] = a.height;
+                } else {
+                    before.add(b);
+                    after.add(a);
+                }
+            }
+            if (moveCount == 0 && added.isEmpty() && removed.isEmpty() && before.isEmpty()) {
+                return null;
+            }
+            return new PlanEdit(plan, Arrays.copyOf(moves, moveCount * MOVE_INTS),
+                    added.toArray(new Room[0]), removed.toArray(new Room[0]),
+                    before.toArray(new Room[0]), after.toArray(new Room[0]));
+        }
+
+        private static boolean sameContent(Room a, Room b) {
+            return a.name.equals(b.name) && a.color == b.color && a.doors == b.doors
+                    && a.windows == b.windows && a.furniture == b.furniture;
+        }
+
+        static long estimateBytes(Room r) {
+            return 56 + 40 + 2L * r.name.length() + r.doors.estimateBytes() + r.windows.estimateBytes()
+                    + r.furniture.estimateBytes();
+        }
+
+        /** Rooms share unchanged element arrays, so only arrays that differ are charged. */
+        private static long contentDeltaBytes(Room b, Room a) {
+            long size = 2 * 56;
+            if (b.doors != a.doors) size += b.doors.estimateBytes() + a.doors.estimateBytes();
+            if (b.windows != a.windows) size += b.windows.estimateBytes() + a.windows.estimateBytes();
+            if (b.furniture != a.furniture) size += b.furniture.estimateBytes() + a.furniture.estimateBytes();
+            if (!b.name.equals(a.name)) size += 2L * (b.name.length() + a.name.length());
+            return size;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            for (Room r : added) {
+                plan.remove(r.id);
+            }
+            for (int o = 0; o < moves.length; o += MOVE_INTS) {
+                Room current = plan.get(moves[o]);
+                if (current != null) {
+                    plan.update(current.withBounds(moves[o + 1], moves[o + 2], moves[o + 3], moves[o + 4]));
+                }
+            }
+            for (Room r : changedBefore) {
+                if (plan.get(r.id) != null) plan.update(r);
+            }
+            for (Room r : removed) {
+                if (plan.get(r.id) == null) plan.add(r);
+            }
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            for (Room r : removed) {
+                plan.remove(r.id);
+            }
+            for (Room r : changedAfter) {
+                if (plan.get(r.id) != null) plan.update(r);
+            }
+            for (int o = 0; o < moves.length; o += MOVE_INTS) {
+                Room current = plan.get(moves[o]);
+                if (current != null) {
+                    plan.update(current.withBounds(moves[o + 5], moves[o + 6], moves[o + 7], moves[o + 8]));
+                }
+            }
+            for (Room r : added) {
+                if (plan.get(r.id) == null) plan.add(r);
+            }
+        }
+
+        @Override
+        public String getPresentationName() {
+            int total = added.length + removed.length + changedBefore.length + moves.length / MOVE_INTS;
+            if (total > 1) return "Edit Rooms";
+            if (added.length == 1) return "Add Room";
+            if (removed.length == 1) return "Delete Room";
+            if (moves.length > 0) return "Move Room";
+            return "Edit Room";
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import javax.swing.*;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Loads a project file on a worker thread. Rooms are handed to {@code sink}
+ * on the Event Dispatch Thread in batches, progress is published as a
+ * percentage of the file read, and the load stops at the next line when
+ * cancelled. Malformed legacy lines are collected with their line numbers
+ * instead of being dropped silently. For a multi-floor file only the first
+ * floor is read; the others are paged in by the returned {@link Building}.
+ * A binary floor with duplicate room ids fails the load on the worker thread,
+ * before any of its rooms are handed on.
+ */
+class PlanLoader extends SwingWorker<PlanLoader.Result, List<Room>> {
+    static final int BATCH_SIZE = 2000;
+    static final int MAX_REPORTED_PROBLEMS = 100;
+
+    private final Path path;
+    private final Consumer<List<Room>> sink;
+    private final long floorBudgetBytes;
+
+    static final class Result {
+        final int roomCount;
+        final int problemCount;
+        final List<String> problems;
+        /** The opened building for binary files, with the loaded rooms as its first floor; null for CSV. */
+        final Building building;
+
+        Result(int roomCount, int problemCount, List<String> problems, Building building) {
+            this.roomCount = roomCount;
+            this.problemCount = problemCount;
+            this.problems = problems;
+            this.building = building;
+        }
+    }
+
+    PlanLoader(Path path, Consumer<List<Room>> sink, long floorBudgetBytes) {
+        this.path = path;
+        this.sink = sink;
+        this.floorBudgetBytes = floorBudgetBytes;
+    }
+
+    @Override
+    protected Result doInBackground() throws IOException {
+        PlanMetrics.FileEvent event = PlanMetrics.beginFile("load", path);
+        Result result = PlanFile.isBinary(path) ? loadBinary() : loadCsv();
+        if (!isCancelled()) PlanMetrics.get().endFile(event, result.roomCount);
+        return result;
+    }
+
+    private Result loadBinary() throws IOException {
+        Building building = Building.open(path, floorBudgetBytes);
+        List<Room> rooms = building.rooms(0);
+        int total = rooms.size();
+        int published = 0;
+        for (int from = 0; from < total && !isCancelled(); from += BATCH_SIZE) {
+            int to = Math.min(total, from + BATCH_SIZE);
+            publish(new ArrayList<>(rooms.subList(from, to)));
+            published = to;
+            setProgress((int) (100L * to / total));
+        }
+        return new Result(published, 0, List.of(), building);
+    }
+
+    private Result loadCsv() throws IOException {
+        long size = Math.max(1, Files.size(path));
+        ArrayList<String> problems = new ArrayList<>();
+        int problemCount = 0;
+        int roomCount = 0;
+        long bytesRead = 0;
+
+        try (InputStream in = Files.newInputStream(path);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16)) {
+            ArrayList<Room> batch = new ArrayList<>(BATCH_SIZE);
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                if (isCancelled()) break;
+                lineNumber++;
+                bytesRead += line.length() + 1;
+                if (line.isBlank()) continue;
+
+                try {
+                    batch.add(PlanFile.parseCsvLine(line));
+                } catch (IllegalArgumentException e) {
+                    if (problemCount++ < MAX_REPORTED_PROBLEMS) {
+                        problems.add("Line " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+
+                if (batch.size() == BATCH_SIZE) {
+                    roomCount += batch.size();
+                    publish(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                    setProgress((int) Math.min(99, 100 * bytesRead / size));
+                }
+            }
+            if (!batch.isEmpty() && !isCancelled()) {
+                roomCount += batch.size();
+                publish(batch);
+            }
+        }
+        if (!isCancelled()) setProgress(100);
+        return new Result(roomCount, problemCount, problems, null);
+    }
+
+    @Override
+    protected void process(List<List<Room>> batches) {
+        if (isCancelled()) return;
+        for (List<Room> batch : batches) {
+            sink.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters for the hot paths: frames painted, overlap queries,
+ * model mutations and file loads and saves. Values are exposed through the
+ * {@link PlanMetricsMBean} JMX interface, and each measurement is also
+ * emitted as a JFR event when a recording has the event enabled. Overlap
+ * query events are disabled by default since they fire for every query.
+ */
+final class PlanMetrics implements PlanMetricsMBean {
+    static final String OBJECT_NAME = "floorplanner:type=PlanMetrics";
+    private static final PlanMetrics INSTANCE = new PlanMetrics();
+    private static boolean registered = false;
+
+    private final FrameTimer frameTimes = new FrameTimer(240);
+    private final LongAdder roomsPainted = new LongAdder();
+    private volatile int lastFrameRooms = 0;
+    private final LongAdder overlapQueries = new LongAdder();
+    private final LongAdder overlapQueryNanos = new LongAdder();
+    private final LongAdder mutations = new LongAdder();
+    private final RateWindow mutationRate = new RateWindow(10);
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder saves = new LongAdder();
+    private volatile long lastLoadNanos = 0;
+    private volatile long lastSaveNanos = 0;
+
+    @Name("floorplanner.Frame")
+    @Label("Frame Painted")
+    @Category("Floor Planner")
+    static final class FrameEvent extends Event {
+        @Label("Rooms Painted")
+        int rooms;
+    }
+
+    @Name("floorplanner.OverlapQuery")
+    @Label("Overlap Query")
+    @Category("Floor Planner")
+    @Enabled(false)
+    static final class OverlapQueryEvent extends Event {
+        @Label("Found")
+        boolean found;
+    }
+
+    @Name("floorplanner.Mutation")
+    @Label("Plan Mutation")
+    @Description("One committed batch of room edits")
+    @Category("Floor Planner")
+    static final class MutationEvent extends Event {
+        @Label("Edits")
+        int edits;
+        @Label("Cleared")
+        boolean cleared;
+    }
+
+    @Name("floorplanner.File")
+    @Label("Project File")
+    @Category("Floor Planner")
+    static final class FileEvent extends Event {
+        @Label("Operation")
+        String operation;
+        @Label("Path")
+        String path;
+        @Label("Rooms")
+        int rooms;
+        transient long startNanos;
+    }
+
+    private PlanMetrics() {}
+
+    static PlanMetrics get() {
+        return INSTANCE;
+    }
+
+    /** Registers the MBean with the platform server; later calls do nothing. */
+    static synchronized void registerMBean() {
+        if (registered) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (Exception e) {
+            System.err.println("Could not register " + OBJECT_NAME + ": " + e);
+        }
+    }
+
+    /** Starts timing a load or save; finish it with {@link #endFile}. */
+    static FileEvent beginFile(String operation, Path path) {
+        FileEvent event = new FileEvent();
+        event.operation = operation;
+        event.path = path.toString();
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    void endFile(FileEvent event, int rooms) {
+        long elapsed = System.nanoTime() - event.startNanos;
+        if ("save".equals(event.operation)) {
+            recordSave(elapsed);
+        } else {
+            recordLoad(elapsed);
+        }
+        event.rooms = rooms;
+        event.commit();
+    }
+
+    void recordFrame(long start, long elapsed, int rooms) {
+        synchronized (frameTimes) {
+            frameTimes.record(start, elapsed);
+        }
+        roomsPainted.add(rooms);
+        lastFrameRooms = rooms;
+    }
+
+    void recordOverlapQuery(long elapsed) {
+        overlapQueries.increment();
+        overlapQueryNanos.add(elapsed);
+    }
+
+    void recordMutations(int edits) {
+        mutations.add(edits);
+        mutationRate.add(edits);
+    }
+
+    void recordLoad(long elapsed) {
+        loads.increment();
+        lastLoadNanos = elapsed;
+    }
+
+    void recordSave(long elapsed) {
+        saves.increment();
+        lastSaveNanos = elapsed;
+    }
+
+    @Override
+    public long getFrameCount() {
+        synchronized (frameTimes) {
+            return frameTimes.getFrameCount();
+        }
+    }
+
+    @Override
+    public double getLastFrameMillis() {
+        synchronized (frameTimes) {
+            return frameTimes.lastMillis();
+        }
+    }
+
+    @Override
+    public double getFrameP50Millis() {
+        synchronized (frameTimes) {
+            return frameTimes.percentileMillis(0.50);
+        }
+    }
+
+    @Override
+    public double getFrameP99Millis() {
+        synchronized (frameTimes) {
+            return frameTimes.percentileMillis(0.99);
+        }
+    }
+
+    @Override
+    public int getFramesPerSecond() {
+        synchronized (frameTimes) {
+            return frameTimes.framesPerSecond();
+        }
+    }
+
+    @Override
+    public int getLastFrameRoomsPainted() {
+        return lastFrameRooms;
+    }
+
+    @Override
+    public long getRoomsPainted() {
+        return roomsPainted.sum();
+    }
+
+    @Override
+    public long getOverlapQueryCount() {
+        return overlapQueries.sum();
+    }
+
+    @Override
+    public double getOverlapQueryMeanMicros() {
+        long n = overlapQueries.sum();
+        return n == 0 ? 0 : overlapQueryNanos.sum() / 1e3 / n;
+    }
+
+    @Override
+    public long getMutationCount() {
+        return mutations.sum();
+    }
+
+    @Override
+    public double getMutationsPerSecond() {
+        return mutationRate.perSecond();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    @Override
+    public double getLastLoadMillis() {
+        return lastLoadNanos / 1e6;
+    }
+
+    @Override
+    public long getSaveCount() {
+        return saves.sum();
+    }
+
+    @Override
+    public double getLastSaveMillis() {
+        return lastSaveNanos / 1e6;
+    }
+
+    /** Event counts in one-second buckets over a sliding window. */
+    private static final class RateWindow {
+        private final long[] counts;
+        private final long[] seconds;
+
+        RateWindow(int windowSeconds) {
+            counts = new long[windowSeconds];
+            seconds = new long[windowSeconds];
+        }
+
+        synchronized void add(long n) {
+            long now = System.nanoTime() / 1_000_000_000L;
+            int i = (int) Math.floorMod(now, (long) counts.length);
+            if (seconds[i] != now) {
+                seconds[i] = now;
+                counts[i] = 0;
+            }
+            counts[i] += n;
+        }
+
+        synchronized double perSecond() {
+            long now = System.nanoTime() / 1_000_000_000L;
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (now - seconds[i] < counts.length) total += counts[i];
+            }
+            return (double) total / counts.length;
+        }
+    }
+}
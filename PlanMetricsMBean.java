@@ -0,0 +1,35 @@
+/**
+ * Management interface of {@link PlanMetrics}, registered as
+ * {@value PlanMetrics#OBJECT_NAME}. Standard MBean interfaces must be public.
+ */
+public interface PlanMetricsMBean {
+    long getFrameCount();
+
+    double getLastFrameMillis();
+
+    double getFrameP50Millis();
+
+    double getFrameP99Millis();
+
+    int getFramesPerSecond();
+
+    int getLastFrameRoomsPainted();
+
+    long getRoomsPainted();
+
+    long getOverlapQueryCount();
+
+    double getOverlapQueryMeanMicros();
+
+    long getMutationCount();
+
+    double getMutationsPerSecond();
+
+    long getLoadCount();
+
+    double getLastLoadMillis();
+
+    long getSaveCount();
+
+    double getLastSaveMillis();
+}
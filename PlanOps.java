@@ -0,0 +1,142 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of plan mutations, shared by the autosave journal and the
+ * collaboration protocol. An op is a put carrying the whole room including its
+ * id, a remove carrying an id, or a clear. Ops address rooms by id and carry
+ * whole values, so applying the same op twice has no further effect.
+ */
+final class PlanOps {
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+    static final byte CLEAR = 3;
+
+    private PlanOps() {}
+
+    /** The ops that turn the state before {@code change} into the state after it, in order. */
+    static List<byte[]> encode(FloorPlan.Change change) {
+        ArrayList<byte[]> ops = new ArrayList<>(change.edits.size() + 1);
+        if (change.cleared) {
+            ops.add(clear());
+        }
+        for (FloorPlan.Edit e : change.edits) {
+            if (e.after != null) {
+                ops.add(put(e.after));
+            } else if (!change.cleared) {
+                ops.add(remove(e.before.id));
+            }
+        }
+        return ops;
+    }
+
+    static byte[] put(Room room) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(PUT);
+            out.writeInt(room.id);
+            out.writeUTF(room.name);
+            out.writeInt(room.x);
+            out.writeInt(room.y);
+            out.writeInt(room.width);
+            out.writeInt(room.height);
+            out.writeInt(room.color);
+            writeRects(out, room.doors);
+            writeRects(out, room.windows);
+            ElementGeometry furniture = room.furniture;
+            out.writeInt(furniture.size());
+            for (int i = 0; i < furniture.size(); i++) {
+                out.writeUTF(furniture.type(i).name);
+                out.writeInt(furniture.x(i));
+                out.writeInt(furniture.y(i));
+                out.writeInt(furniture.width(i));
+                out.writeInt(furniture.height(i));
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte[] remove(int id) {
+        return ByteBuffer.allocate(5).put(REMOVE).putInt(id).array();
+    }
+
+    static byte[] clear() {
+        return new byte[]{CLEAR};
+    }
+
+    static byte type(byte[] op) {
+        return op[0];
+    }
+
+    /** The room id of a put or remove. */
+    static int id(byte[] op) {
+        return ByteBuffer.wrap(op, 1, 4).getInt();
+    }
+
+    static Room room(byte[] op) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(op, 1, op.length - 1));
+        int id = in.readInt();
+        String name = in.readUTF();
+        int x = in.readInt(), y = in.readInt(), width = in.readInt(), height = in.readInt();
+        int color = in.readInt();
+        ElementGeometry doors = ElementGeometry.wrap(readRects(in), null);
+        ElementGeometry windows = ElementGeometry.wrap(readRects(in), null);
+        int n = in.readInt();
+        int[] rects = new int[n * ElementGeometry.STRIDE];
+        int[] kinds = new int[n];
+        for (int i = 0; i < n; i++) {
+            kinds[i] = FurnitureType.of(in.readUTF()).id;
+            for (int k = 0; k < ElementGeometry.STRIDE; k++) {
+                rects[i * ElementGeometry.STRIDE + k] = in.readInt();
+            }
+        }
+        return new Room(id, name, x, y, width, height, color, doors, windows, ElementGeometry.wrap(rects, kinds));
+    }
+
+    /** Applies one op to rooms keyed by id. */
+    static void apply(byte[] op, Map<Integer, Room> rooms) throws IOException {
+        switch (type(op)) {
+            case CLEAR:
+                rooms.clear();
+                break;
+            case REMOVE:
+                rooms.remove(id(op));
+                break;
+            case PUT:
+                Room room = room(op);
+                rooms.put(room.id, room);
+                break;
+            default:
+                throw new IOException("Unknown op type " + type(op));
+        }
+    }
+
+    private static void writeRects(DataOutputStream out, ElementGeometry rects) throws IOException {
+        out.writeInt(rects.size());
+        for (int i = 0; i < rects.size(); i++) {
+            out.writeInt(rects.x(i));
+            out.writeInt(rects.y(i));
+            out.writeInt(rects.width(i));
+            out.writeInt(rects.height(i));
+        }
+    }
+
+    private static int[] readRects(DataInputStream in) throws IOException {
+        int[] rects = new int[in.readInt() * ElementGeometry.STRIDE];
+        for (int i = 0; i < rects.length; i++) {
+            rects[i] = in.readInt();
+        }
+        return rects;
+    }
+}
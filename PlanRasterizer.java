@@ -0,0 +1,163 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Offscreen rendering of whole plans to PNG, either as one image scaled to
+ * fit a maximum size or as a z/x/y pyramid of square tiles. Rooms are drawn
+ * with {@link FloorPlanCanvas#paintRoom} and walls with
+ * {@link FloorPlanCanvas#paintWalls}, so images look like the editor at
+ * the same zoom. Works with {@code java.awt.headless=true}; tiles of one
+ * level are rendered in parallel on the calling fork/join pool.
+ *
+ * <p>At zoom 0 the whole plan fits one tile; every further level doubles the
+ * scale. Tiles with no rooms are not written.
+ */
+final class PlanRasterizer {
+    static final int TILE_SIZE = 256;
+    private static final Color BACKGROUND = Color.WHITE;
+
+    private PlanRasterizer() {}
+
+    /** One written image and how long it took to render and encode. */
+    static final class Rendered {
+        final Path path;
+        final long nanos;
+
+        Rendered(Path path, long nanos) {
+            this.path = path;
+            this.nanos = nanos;
+        }
+    }
+
+    /** Model-space bounds of all rooms as {x, y, width, height}, or null for an empty plan. */
+    static int[] bounds(List<Room> rooms) {
+        if (rooms.isEmpty()) return null;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (Room room : rooms) {
+            minX = Math.min(minX, room.x);
+            minY = Math.min(minY, room.y);
+            maxX = Math.max(maxX, room.x + room.width);
+            maxY = Math.max(maxY, room.y + room.height);
+        }
+        return new int[]{minX, minY, maxX - minX, maxY - minY};
+    }
+
+    /**
+     * Renders the model area starting at ({@code originX}, {@code originY}) into
+     * an image of the given size at {@code scale} pixels per model unit.
+     */
+    static BufferedImage render(List<Room> rooms, double originX, double originY, double scale, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(BACKGROUND);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, scale >= FloorPlanCanvas.ANTIALIAS_MIN_SCALE
+                    ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+            g.scale(scale, scale);
+            g.translate(-originX, -originY);
+            for (Room room : rooms) {
+                FloorPlanCanvas.paintRoom(g, room, false, scale, false);
+            }
+            if (scale >= FloorPlanCanvas.WALL_MIN_SCALE) {
+                int x = (int) Math.floor(originX), y = (int) Math.floor(originY);
+                FloorPlanCanvas.paintWalls(g, WallGraph.of(rooms), x - 1, y - 1,
+                        (int) Math.ceil(width / scale) + 2, (int) Math.ceil(height / scale) + 2);
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /** Writes the whole plan as one PNG no larger than {@code maxSize} on either side, and never upscaled. */
+    static Rendered writeImage(List<Room> rooms, int maxSize, Path target) throws IOException {
+        long start = System.nanoTime();
+        int[] b = bounds(rooms);
+        if (b == null) b = new int[]{0, 0, 1, 1};
+        double scale = Math.min(1.0, (double) maxSize / Math.max(b[2], b[3]));
+        int width = Math.max(1, (int) Math.ceil(b[2] * scale));
+        int height = Math.max(1, (int) Math.ceil(b[3] * scale));
+        write(render(rooms, b[0], b[1], scale, width, height), target);
+        return new Rendered(target, System.nanoTime() - start);
+    }
+
+    /** Writes tiles for zoom levels 0 to {@code maxZoom} as {@code dir/z/x/y.png}. */
+    static List<Rendered> writeTiles(List<Room> rooms, int maxZoom, Path dir) throws IOException {
+        ArrayList<Rendered> written = new ArrayList<>();
+        int[] b = bounds(rooms);
+        if (b == null) return written;
+        double extent = Math.max(1, Math.max(b[2], b[3]));
+        for (int z = 0; z <= maxZoom; z++) {
+            int tiles = 1 << z;
+            double tileModel = extent / tiles;
+            double scale = TILE_SIZE / tileModel;
+            List<Map.Entry<Long, List<Room>>> buckets = new ArrayList<>(bucket(rooms, b[0], b[1], tileModel, tiles).entrySet());
+            buckets.sort(Map.Entry.comparingByKey());
+            int level = z;
+            try {
+                written.addAll(buckets.parallelStream()
+                        .map(bucket -> {
+                            long t = bucket.getKey();
+                            int tx = (int) (t % tiles), ty = (int) (t / tiles);
+                            long start = System.nanoTime();
+                            Path target = dir.resolve(level + "/" + tx + "/" + ty + ".png");
+                            try {
+                                write(render(bucket.getValue(), b[0] + tx * tileModel, b[1] + ty * tileModel,
+                                        scale, TILE_SIZE, TILE_SIZE), target);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return new Rendered(target, System.nanoTime() - start);
+                        })
+                        .collect(Collectors.toList()));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Lists, per tile of one level keyed by {@code ty * tiles + tx}, the rooms
+     * that touch it, keeping paint order. Only tiles with rooms have an entry,
+     * so deep levels of a sparse plan cost memory in proportion to the rooms.
+     */
+    private static Map<Long, List<Room>> bucket(List<Room> rooms, int originX, int originY, double tileModel, int tiles) {
+        HashMap<Long, List<Room>> buckets = new HashMap<>();
+        for (Room room : rooms) {
+            int x0 = clamp((int) Math.floor((room.x - originX) / tileModel), tiles);
+            int y0 = clamp((int) Math.floor((room.y - originY) / tileModel), tiles);
+            int x1 = clamp((int) Math.floor((room.x + room.width - originX) / tileModel), tiles);
+            int y1 = clamp((int) Math.floor((room.y + room.height - originY) / tileModel), tiles);
+            for (int ty = y0; ty <= y1; ty++) {
+                for (int tx = x0; tx <= x1; tx++) {
+                    buckets.computeIfAbsent((long) ty * tiles + tx, t -> new ArrayList<>()).add(room);
+                }
+            }
+        }
+        return buckets;
+    }
+
+    private static int clamp(int tile, int tiles) {
+        return Math.max(0, Math.min(tiles - 1, tile));
+    }
+
+    private static void write(BufferedImage image, Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        if (!ImageIO.write(image, "png", target.toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+}
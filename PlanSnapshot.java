@@ -0,0 +1,134 @@
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Immutable state of a {@link FloorPlan} as of one committed change. Rooms
+ * are held in two {@link PersistentIntMap}s, one from id to paint position
+ * and one from paint position to room, so the snapshot after an edit shares
+ * all but a few trie nodes with the one before it. Snapshots never change and
+ * can be read from any thread without locking while the plan is edited.
+ */
+final class PlanSnapshot {
+    static final PlanSnapshot EMPTY = new PlanSnapshot(PersistentIntMap.empty(), PersistentIntMap.empty(), 0, 0);
+
+    private final PersistentIntMap<Integer> positions;
+    private final PersistentIntMap<Room> rooms;
+    private final int nextPosition;
+    private final long version;
+
+    private PlanSnapshot(PersistentIntMap<Integer> positions, PersistentIntMap<Room> rooms, int nextPosition, long version) {
+        this.positions = positions;
+        this.rooms = rooms;
+        this.nextPosition = nextPosition;
+        this.version = version;
+    }
+
+    /** The plan's {@link FloorPlan#getVersion version} when this snapshot was taken. */
+    long getVersion() {
+        return version;
+    }
+
+    int size() {
+        return rooms.size();
+    }
+
+    boolean isEmpty() {
+        return rooms.isEmpty();
+    }
+
+    Room get(int id) {
+        Integer position = positions.get(id);
+        return position == null ? null : rooms.get(position);
+    }
+
+    /** Rooms in paint order, bottom first. */
+    Collection<Room> rooms() {
+        return new AbstractCollection<Room>() {
+            @Override
+            public Iterator<Room> iterator() {
+                return rooms.iterator();
+            }
+
+            @Override
+            public int size() {
+                return rooms.size();
+            }
+        };
+    }
+
+    /** This snapshot with the stored room of the same id replaced in place, for the common single edit. */
+    PlanSnapshot replace(Room room, long version) {
+        Integer position = positions.get(room.id);
+        if (position == null) return builder().put(room).build(version);
+        return new PlanSnapshot(positions, rooms.put(position, room), nextPosition, version);
+    }
+
+    Builder builder() {
+        return new Builder(this);
+    }
+
+    /** Derives the next snapshot from this one. */
+    static final class Builder {
+        private PersistentIntMap.Builder<Integer> positions;
+        private PersistentIntMap.Builder<Room> rooms;
+        private int nextPosition;
+
+        private Builder(PlanSnapshot from) {
+            positions = from.positions.builder();
+            rooms = from.rooms.builder();
+            nextPosition = from.nextPosition;
+        }
+
+        /** Replaces the room with the same id in place, or adds it on top. */
+        Builder put(Room room) {
+            Integer position = positions.get(room.id);
+            if (position == null) {
+                position = takePosition();
+                positions.put(room.id, position);
+            }
+            rooms.put(position, room);
+            return this;
+        }
+
+        Builder remove(int id) {
+            Integer position = positions.get(id);
+            if (position != null) {
+                positions.remove(id);
+                rooms.remove(position);
+            }
+            return this;
+        }
+
+        /** Moves a room to the top of the paint order. */
+        Builder toFront(int id) {
+            Integer position = positions.get(id);
+            if (position == null) return this;
+            Room room = rooms.get(position);
+            rooms.remove(position);
+            Integer top = takePosition();
+            positions.put(id, top);
+            rooms.put(top, room);
+            return this;
+        }
+
+        PlanSnapshot build(long version) {
+            return new PlanSnapshot(positions.build(), rooms.build(), nextPosition, version);
+        }
+
+        /** Next free paint position; renumbers all rooms from 0 if positions have run out. */
+        private int takePosition() {
+            if (nextPosition == Integer.MAX_VALUE) {
+                PersistentIntMap<Room> ordered = rooms.build();
+                positions = PersistentIntMap.<Integer>empty().builder();
+                rooms = PersistentIntMap.<Room>empty().builder();
+                nextPosition = 0;
+                for (Room room : ordered) {
+                    positions.put(room.id, nextPosition);
+                    rooms.put(nextPosition++, room);
+                }
+            }
+            return nextPosition++;
+        }
+    }
+}
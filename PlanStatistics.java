@@ -0,0 +1,167 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Running totals of a plan for quoting: floor area, room perimeter, window
+ * length and furniture count per room type, and the length of the merged
+ * walls. Each change adds or subtracts only the rooms it touches, so reading
+ * the totals of a group is a map lookup however large the plan is.
+ *
+ * <p>The room type is the bracketed suffix the Add Room dialog appends to the
+ * name, as in "Master (Bedroom)"; rooms without one are grouped as
+ * {@link #OTHER}.
+ */
+final class PlanStatistics implements FloorPlan.Listener {
+    static final String OTHER = "Other";
+    /** Glazing height assumed for window-to-floor ratios, since the plan stores no heights. */
+    static final int WINDOW_HEIGHT = 6 * FloorPlan.GRID_SPACING;
+
+    /** Totals over the rooms of one type. */
+    static final class Group {
+        final String type;
+        private int rooms;
+        private long area, perimeter, windowLength;
+        private int[] furniture = new int[0];
+
+        Group(String type) {
+            this.type = type;
+        }
+
+        int rooms() {
+            return rooms;
+        }
+
+        long area() {
+            return area;
+        }
+
+        /** Summed perimeter of the rooms; walls between two rooms count for each. */
+        long perimeter() {
+            return perimeter;
+        }
+
+        /** Summed length of the windows along their walls. */
+        long windowLength() {
+            return windowLength;
+        }
+
+        /** Window area, at {@link #WINDOW_HEIGHT}, over floor area. */
+        double windowToFloorRatio() {
+            return area == 0 ? 0 : (double) windowLength * WINDOW_HEIGHT / area;
+        }
+
+        int furnitureCount(FurnitureType type) {
+            return type.id < furniture.length ? furniture[type.id] : 0;
+        }
+
+        int furnitureCount() {
+            int count = 0;
+            for (int n : furniture) count += n;
+            return count;
+        }
+
+        private void add(Room room, int sign) {
+            rooms += sign;
+            area += sign * (long) room.width * room.height;
+            perimeter += sign * 2L * (room.width + room.height);
+            for (int i = 0; i < room.windows.size(); i++) {
+                windowLength += sign * alongWall(room, room.windows, i);
+            }
+            for (int i = 0; i < room.furniture.size(); i++) {
+                int id = room.furniture.type(i).id;
+                if (id >= furniture.length) furniture = Arrays.copyOf(furniture, id + 1);
+                furniture[id] += sign;
+            }
+        }
+    }
+
+    private final FloorPlan plan;
+    private final HashMap<String, Group> groups = new HashMap<>();
+    private final Group total = new Group("Total");
+    private final WallGraph walls;
+
+    /**
+     * Totals the rooms already in {@code plan} and follows its changes from
+     * then on. {@code walls} is read for the wall length but kept up to date by
+     * its owner, such as the plan's canvas.
+     */
+    PlanStatistics(FloorPlan plan, WallGraph walls) {
+        this.plan = plan;
+        this.walls = walls;
+        for (Room room : plan.rooms()) {
+            add(room, 1);
+        }
+        plan.addListener(this);
+    }
+
+    /** Stops following the plan. */
+    void dispose() {
+        plan.removeListener(this);
+    }
+
+    @Override
+    public void planChanged(FloorPlan.Change change) {
+        if (change.cleared) {
+            groups.clear();
+            total.rooms = 0;
+            total.area = total.perimeter = total.windowLength = 0;
+            total.furniture = new int[0];
+            for (Room room : plan.rooms()) {
+                add(room, 1);
+            }
+            return;
+        }
+        for (FloorPlan.Edit e : change.edits) {
+            if (e.before != null) add(e.before, -1);
+            if (e.after != null) add(e.after, 1);
+        }
+    }
+
+    /** Totals for one room type, or {@code null} if the plan has no room of that type. */
+    Group group(String type) {
+        return groups.get(type);
+    }
+
+    /** Every room type in the plan, in no particular order. */
+    Collection<Group> groups() {
+        return Collections.unmodifiableCollection(groups.values());
+    }
+
+    Group total() {
+        return total;
+    }
+
+    /** Length of the merged walls, a wall shared by two rooms counted once. */
+    long wallLength() {
+        return walls.wallLength();
+    }
+
+    static String typeOf(Room room) {
+        String name = room.name;
+        int open = name.lastIndexOf(" (");
+        if (open < 0 || !name.endsWith(")") || open + 3 >= name.length()) return OTHER;
+        return name.substring(open + 2, name.length() - 1);
+    }
+
+    private void add(Room room, int sign) {
+        String type = typeOf(room);
+        Group group = groups.get(type);
+        if (group == null) {
+            group = new Group(type);
+            groups.put(type, group);
+        }
+        group.add(room, sign);
+        if (group.rooms == 0) groups.remove(type);
+        total.add(room, sign);
+    }
+
+    /** Length of an opening along the wall it sits on; one inside the room counts its longer side. */
+    private static int alongWall(Room room, ElementGeometry rects, int i) {
+        int width = rects.width(i), height = rects.height(i);
+        Side side = Side.of(room.width, room.height, rects.x(i), rects.y(i), width, height);
+        if (side == null) return Math.max(width, height);
+        return side == Side.NORTH || side == Side.SOUTH ? width : height;
+    }
+}
@@ -0,0 +1,391 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless command line entry point for validating and converting project
+ * files in bulk. {@code FloorPlanApp} hands over to it when started with
+ * arguments, so no display is needed. Files are processed in parallel, one
+ * per worker, and a JSON report with per-file problems and overall
+ * throughput is written to standard output or to the {@code --report} file.
+ *
+ * <pre>
+ *   java -cp out PlanTool [--convert fpl|csv] [--out DIR] [--report FILE] [--threads N]
+ *                         [--png DIR] [--png-size N] [--tiles DIR] [--max-zoom N]
+ *                         [--svg DIR] [--pdf DIR] FILE|DIR...
+ * </pre>
+ * Directories are searched recursively for {@code .fpl} and {@code .csv}
+ * files. The exit status is 0 when every file loads and validates cleanly,
+ * 1 when problems were found or a file failed, and 2 on a usage error.
+ * Converting to CSV keeps only room names, bounds and colours, as the legacy
+ * format has no place for doors, windows or furniture. Outputs are named
+ * after the input file, so two inputs with the same base name cannot share an
+ * output directory; the run stops before writing anything if they would.
+ *
+ * <p>{@code --png} writes one image per plan, at most {@code --png-size}
+ * pixels on a side; {@code --tiles} writes a tile pyramid per plan under a
+ * directory named after it (see {@link PlanRasterizer}); {@code --svg} and
+ * {@code --pdf} write vector drawings (see {@link VectorExport}). The time
+ * taken by every image is listed in the report.
+ */
+final class PlanTool {
+    static final int MAX_REPORTED_PROBLEMS = 1000;
+
+    private String convertTo;
+    private Path outDir;
+    private Path reportPath;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path pngDir;
+    private int pngSize = 1024;
+    private Path tilesDir;
+    private int maxZoom = 3;
+    private Path svgDir;
+    private Path pdfDir;
+    private final List<Path> inputs = new ArrayList<>();
+
+    private static final class FileResult {
+        final Path path;
+        String format;
+        int rooms;
+        List<PlanValidator.Problem> problems = new ArrayList<>();
+        Path converted;
+        List<PlanRasterizer.Rendered> images = new ArrayList<>();
+        String error;
+
+        FileResult(Path path) {
+            this.path = path;
+        }
+    }
+
+    private PlanTool() {}
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        PlanTool tool = new PlanTool();
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        try {
+            tool.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println("usage: PlanTool [--convert fpl|csv] [--out DIR] [--report FILE] [--threads N]"
+                    + " [--png DIR] [--png-size N] [--tiles DIR] [--max-zoom N] [--svg DIR] [--pdf DIR] FILE|DIR...");
+            return 2;
+        }
+        try {
+            return tool.execute(out);
+        } catch (IOException e) {
+            err.println(e.getMessage());
+            return 2;
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--convert":
+                    convertTo = value(args, ++i, arg).toLowerCase(Locale.ROOT);
+                    if (!convertTo.equals("fpl") && !convertTo.equals("csv")) {
+                        throw new IllegalArgumentException("--convert must be fpl or csv");
+                    }
+                    break;
+                case "--out":
+                    outDir = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--report":
+                    reportPath = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--threads":
+                    threads = number(args, ++i, arg, 1);
+                    break;
+                case "--png":
+                    pngDir = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--png-size":
+                    pngSize = number(args, ++i, arg, 1);
+                    break;
+                case "--tiles":
+                    tilesDir = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--svg":
+                    svgDir = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--pdf":
+                    pdfDir = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--max-zoom":
+                    maxZoom = number(args, ++i, arg, 0);
+                    if (maxZoom > 12) throw new IllegalArgumentException("--max-zoom must be at most 12");
+                    break;
+                default:
+                    if (arg.startsWith("--")) throw new IllegalArgumentException("unknown option " + arg);
+                    inputs.add(Paths.get(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("no input files");
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    private static int number(String[] args, int i, String option, int min) {
+        int n;
+        try {
+            n = Integer.parseInt(value(args, i, option));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " must be a number");
+        }
+        if (n < min) throw new IllegalArgumentException(option + " must be at least " + min);
+        return n;
+    }
+
+    private int execute(PrintStream out) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> walk = Files.walk(input)) {
+                    walk.filter(Files::isRegularFile).filter(PlanTool::isProjectFile).sorted().forEach(files::add);
+                }
+            } else {
+                files.add(input);
+            }
+        }
+        checkTargets(files);
+        if (outDir != null) {
+            Files.createDirectories(outDir);
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<FileResult> results;
+        try {
+            results = pool.submit(() -> files.parallelStream().map(this::process).collect(Collectors.toList())).join();
+        } finally {
+            pool.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (reportPath != null) {
+            try (Writer writer = Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8)) {
+                writeReport(writer, results, elapsed);
+            }
+        } else {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writeReport(writer, results, elapsed);
+            writer.flush();
+        }
+        for (FileResult r : results) {
+            if (r.error != null || !r.problems.isEmpty()) return 1;
+        }
+        return 0;
+    }
+
+    private static boolean isProjectFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".fpl") || name.endsWith(".csv");
+    }
+
+    private FileResult process(Path path) {
+        FileResult result = new FileResult(path);
+        try {
+            boolean binary = PlanFile.isBinary(path);
+            result.format = binary ? "fpl" : "csv";
+            if (binary && Building.isBuildingFile(path)) {
+                validateBuilding(path, result);
+                return result;
+            }
+            List<Room> rooms = binary ? PlanFile.readBinary(path) : PlanFile.readCsv(path);
+            result.rooms = rooms.size();
+            result.problems = PlanValidator.validate(rooms);
+            if (convertTo != null) {
+                Path target = convertedPath(path);
+                if (target.toAbsolutePath().normalize().equals(path.toAbsolutePath().normalize())) {
+                    throw new IOException("refusing to overwrite input " + path);
+                }
+                if (convertTo.equals("csv")) {
+                    PlanFile.writeCsv(rooms, target);
+                } else {
+                    PlanFile.writeBinary(rooms, target);
+                }
+                result.converted = target;
+            }
+            if (pngDir != null) {
+                result.images.add(PlanRasterizer.writeImage(rooms, pngSize, pngDir.resolve(baseName(path) + ".png")));
+            }
+            if (tilesDir != null) {
+                result.images.addAll(PlanRasterizer.writeTiles(rooms, maxZoom, tilesDir.resolve(baseName(path))));
+            }
+            if (svgDir != null) {
+                result.images.add(exportVector(rooms, svgDir.resolve(baseName(path) + ".svg")));
+            }
+            if (pdfDir != null) {
+                result.images.add(exportVector(rooms, pdfDir.resolve(baseName(path) + ".pdf")));
+            }
+        } catch (IOException | RuntimeException e) {
+            result.error = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        return result;
+    }
+
+    /** Validates every floor of a multi-floor file, one floor resident at a time. */
+    private void validateBuilding(Path path, FileResult result) throws IOException {
+        Building building = Building.open(path, 0);
+        for (int i = 0; i < building.floorCount(); i++) {
+            building.setActive(i);
+            List<Room> rooms = building.rooms(i);
+            result.rooms += rooms.size();
+            for (PlanValidator.Problem p : PlanValidator.validate(rooms)) {
+                result.problems.add(p.withMessage(building.floorName(i) + ": " + p.message));
+            }
+        }
+        if (convertTo != null || pngDir != null || tilesDir != null || svgDir != null || pdfDir != null) {
+            throw new IOException("conversion and rendering need a single-floor file");
+        }
+    }
+
+    private static PlanRasterizer.Rendered exportVector(List<Room> rooms, Path target) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        VectorExport.export(rooms, target);
+        return new PlanRasterizer.Rendered(target, System.nanoTime() - start);
+    }
+
+    /**
+     * Fails before anything is written if two inputs would write the same
+     * converted file or image, as they run in parallel and one would silently
+     * overwrite the other. An input listed twice, directly and through its
+     * directory, is processed once.
+     */
+    private void checkTargets(List<Path> files) throws IOException {
+        Set<Path> seen = new HashSet<>();
+        files.removeIf(path -> !seen.add(path.toAbsolutePath().normalize()));
+        Map<Path, Path> writers = new HashMap<>();
+        for (Path path : files) {
+            List<Path> targets = new ArrayList<>();
+            if (convertTo != null) targets.add(convertedPath(path));
+            if (pngDir != null) targets.add(pngDir.resolve(baseName(path) + ".png"));
+            if (tilesDir != null) targets.add(tilesDir.resolve(baseName(path)));
+            if (svgDir != null) targets.add(svgDir.resolve(baseName(path) + ".svg"));
+            if (pdfDir != null) targets.add(pdfDir.resolve(baseName(path) + ".pdf"));
+            for (Path target : targets) {
+                Path other = writers.putIfAbsent(target.toAbsolutePath().normalize(), path);
+                if (other != null) {
+                    throw new IOException(other + " and " + path + " would both write " + target);
+                }
+            }
+        }
+    }
+
+    private Path convertedPath(Path path) {
+        Path dir = outDir != null ? outDir : path.toAbsolutePath().getParent();
+        return dir.resolve(baseName(path) + "." + convertTo);
+    }
+
+    private static String baseName(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private void writeReport(Writer w, List<FileResult> results, long elapsedNanos) throws IOException {
+        long rooms = 0, problems = 0, failed = 0, images = 0, renderNanos = 0;
+        w.write("{\n  \"files\": [");
+        for (int i = 0; i < results.size(); i++) {
+            FileResult r = results.get(i);
+            rooms += r.rooms;
+            problems += r.problems.size();
+            if (r.error != null) failed++;
+            images += r.images.size();
+            w.write(i == 0 ? "\n" : ",\n");
+            w.write("    {\"path\": " + quote(r.path.toString()));
+            w.write(", \"format\": " + quote(r.format));
+            w.write(", \"rooms\": " + r.rooms);
+            w.write(", \"problemCount\": " + r.problems.size());
+            if (r.converted != null) w.write(", \"converted\": " + quote(r.converted.toString()));
+            if (r.error != null) w.write(", \"error\": " + quote(r.error));
+            w.write(", \"problems\": [");
+            int shown = Math.min(MAX_REPORTED_PROBLEMS, r.problems.size());
+            for (int p = 0; p < shown; p++) {
+                PlanValidator.Problem problem = r.problems.get(p);
+                w.write(p == 0 ? "\n" : ",\n");
+                w.write("      {\"type\": " + quote(problem.kind.label) + ", \"room\": " + problem.roomId);
+                if (problem.otherId != 0) w.write(", \"other\": " + problem.otherId);
+                w.write(", \"message\": " + quote(problem.message) + "}");
+            }
+            w.write(shown == 0 ? "]" : "\n    ]");
+            if (!r.images.isEmpty()) {
+                w.write(", \"images\": [");
+                for (int m = 0; m < r.images.size(); m++) {
+                    PlanRasterizer.Rendered image = r.images.get(m);
+                    renderNanos += image.nanos;
+                    w.write(m == 0 ? "\n" : ",\n");
+                    w.write("      {\"path\": " + quote(image.path.toString()));
+                    w.write(String.format(Locale.ROOT, ", \"renderMillis\": %.2f}", image.nanos / 1e6));
+                }
+                w.write("\n    ]");
+            }
+            w.write("}");
+        }
+        double seconds = elapsedNanos / 1e9;
+        w.write(results.isEmpty() ? "],\n" : "\n  ],\n");
+        w.write("  \"summary\": {");
+        w.write("\"files\": " + results.size());
+        w.write(", \"failed\": " + failed);
+        w.write(", \"rooms\": " + rooms);
+        w.write(", \"problems\": " + problems);
+        w.write(", \"threads\": " + threads);
+        if (images > 0) {
+            w.write(", \"images\": " + images);
+            w.write(String.format(Locale.ROOT, ", \"renderMillis\": %.1f", renderNanos / 1e6));
+        }
+        w.write(String.format(Locale.ROOT, ", \"elapsedMillis\": %.1f", elapsedNanos / 1e6));
+        w.write(String.format(Locale.ROOT, ", \"filesPerSecond\": %.1f", seconds > 0 ? results.size() / seconds : 0.0));
+        w.write("}\n}\n");
+    }
+
+    static String quote(String s) {
+        if (s == null) return "null";
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks a set of rooms for problems the editor does not, or only partly,
+ * prevent: rooms overlapping each other, rooms sharing no wall with any other
+ * room, doors overlapping windows, furniture in a door's swing, furniture
+ * reaching outside its room, and furniture overlapping or crowding other
+ * furniture. Works on plain room values and keeps no state, so it is safe to
+ * run on any thread.
+ */
+final class PlanValidator {
+    enum Kind {
+        ROOM_OVERLAP("room-overlap"),
+        ISOLATED_ROOM("isolated-room"),
+        OPENING_COLLISION("opening-collision"),
+        DOOR_SWING("door-swing"),
+        FURNITURE_OUTSIDE("furniture-outside"),
+        FURNITURE_OVERLAP("furniture-overlap"),
+        CLEARANCE("clearance");
+
+        final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    static final class Problem {
+        final Kind kind;
+        final int roomId;
+        /** The other room for overlaps, otherwise 0. */
+        final int otherId;
+        final String message;
+        /** Where the problem is, in plan coordinates. */
+        final int x, y, width, height;
+
+        Problem(Kind kind, int roomId, int otherId, String message, int x, int y, int width, int height) {
+            this.kind = kind;
+            this.roomId = roomId;
+            this.otherId = otherId;
+            this.message = message;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        Problem withMessage(String message) {
+            return new Problem(kind, roomId, otherId, message, x, y, width, height);
+        }
+
+        @Override
+        public String toString() {
+            return kind.label + ": " + message;
+        }
+    }
+
+    /** Smallest free gap between two pieces of furniture. */
+    static final int MIN_CLEARANCE = FloorPlan.GRID_SPACING / 2;
+
+    private PlanValidator() {}
+
+    static List<Problem> validate(Collection<Room> rooms) {
+        return validate(rooms, () -> false);
+    }
+
+    /**
+     * Validates {@code rooms}, giving up with {@code null} as soon as
+     * {@code stale} reports that nobody wants the result any more.
+     */
+    static List<Problem> validate(Collection<Room> rooms, BooleanSupplier stale) {
+        ArrayList<Problem> problems = new ArrayList<>();
+        Room[] all = rooms.toArray(new Room[0]);
+        SpatialIndex<Integer> index = new SpatialIndex<>(8 * FloorPlan.GRID_SPACING);
+        for (int i = 0; i < all.length; i++) {
+            index.insert(i, all[i].x, all[i].y, all[i].width, all[i].height);
+        }
+        boolean[] touches = new boolean[all.length];
+        for (int i = 0; i < all.length; i++) {
+            if ((i & 255) == 0 && stale.getAsBoolean()) return null;
+            Room room = all[i];
+            int self = i;
+            index.query(room.x - 1, room.y - 1, room.width + 2, room.height + 2, j -> {
+                Room other = all[j];
+                if (j <= self) return;
+                if (room.intersects(other.x, other.y, other.width, other.height)) {
+                    int x0 = Math.max(room.x, other.x), y0 = Math.max(room.y, other.y);
+                    int x1 = Math.min(room.x + room.width, other.x + other.width);
+                    int y1 = Math.min(room.y + room.height, other.y + other.height);
+                    problems.add(new Problem(Kind.ROOM_OVERLAP, room.id, other.id,
+                            "'" + room.name + "' overlaps '" + other.name + "'", x0, y0, x1 - x0, y1 - y0));
+                }
+                if (sharesWall(room, other)) {
+                    touches[self] = true;
+                    touches[j] = true;
+                }
+            });
+            validateElements(room, problems);
+        }
+        for (int i = 0; all.length > 1 && i < all.length; i++) {
+            Room room = all[i];
+            if (!touches[i]) {
+                problems.add(new Problem(Kind.ISOLATED_ROOM, room.id, 0, "'" + room.name + "' shares no wall with another room",
+                        room.x, room.y, room.width, room.height));
+            }
+        }
+        return problems;
+    }
+
+    /** True if the rooms touch or overlap along a stretch of wall longer than a point. */
+    static boolean sharesWall(Room a, Room b) {
+        int overlapX = Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x);
+        int overlapY = Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y);
+        return (overlapX >= 0 && overlapY > 0) || (overlapY >= 0 && overlapX > 0);
+    }
+
+    /** Checks the doors, windows and furniture of one room. */
+    static void validateElements(Room room, List<Problem> problems) {
+        ElementGeometry doors = room.doors;
+        for (int d = 0; d < doors.size(); d++) {
+            int dx = doors.x(d), dy = doors.y(d), dw = doors.width(d), dh = doors.height(d);
+            if (room.windows.intersectsAny(dx, dy, dw, dh)) {
+                problems.add(new Problem(Kind.OPENING_COLLISION, room.id, 0,
+                        "door " + d + " of '" + room.name + "' overlaps a window", room.x + dx, room.y + dy, dw, dh));
+            }
+            int[] swing = swingArea(room, dx, dy, dw, dh);
+            if (swing != null && room.furniture.intersectsAny(swing[0], swing[1], swing[2], swing[3])) {
+                problems.add(new Problem(Kind.DOOR_SWING, room.id, 0,
+                        "furniture blocks the swing of door " + d + " of '" + room.name + "'",
+                        room.x + swing[0], room.y + swing[1], swing[2], swing[3]));
+            }
+        }
+        ElementGeometry furniture = room.furniture;
+        for (int f = 0; f < furniture.size(); f++) {
+            int fx = furniture.x(f), fy = furniture.y(f), fw = furniture.width(f), fh = furniture.height(f);
+            if (fx < 0 || fy < 0 || fx + fw > room.width || fy + fh > room.height) {
+                problems.add(new Problem(Kind.FURNITURE_OUTSIDE, room.id, 0,
+                        furniture.type(f).name + " " + f + " lies outside '" + room.name + "'", room.x + fx, room.y + fy, fw, fh));
+            }
+            for (int g = f + 1; g < furniture.size(); g++) {
+                int gx = furniture.x(g), gy = furniture.y(g), gw = furniture.width(g), gh = furniture.height(g);
+                int x0 = Math.min(fx, gx), y0 = Math.min(fy, gy);
+                int x1 = Math.max(fx + fw, gx + gw), y1 = Math.max(fy + fh, gy + gh);
+                if (SpatialIndex.intersects(fx, fy, fw, fh, gx, gy, gw, gh)) {
+                    problems.add(new Problem(Kind.FURNITURE_OVERLAP, room.id, 0,
+                            furniture.type(f).name + " " + f + " overlaps " + furniture.type(g).name + " " + g
+                                    + " in '" + room.name + "'", room.x + x0, room.y + y0, x1 - x0, y1 - y0));
+                } else if (SpatialIndex.intersects(fx - MIN_CLEARANCE, fy - MIN_CLEARANCE, fw + 2 * MIN_CLEARANCE, fh + 2 * MIN_CLEARANCE,
+                        gx, gy, gw, gh)) {
+                    problems.add(new Problem(Kind.CLEARANCE, room.id, 0,
+                            "less than " + MIN_CLEARANCE + " between " + furniture.type(f).name + " " + f + " and "
+                                    + furniture.type(g).name + " " + g + " in '" + room.name + "'",
+                            room.x + x0, room.y + y0, x1 - x0, y1 - y0));
+                }
+            }
+        }
+    }
+
+    /**
+     * The square a door sweeps inside its room, relative to the room, with
+     * the door's width as its side; {@code null} if the door is not on a wall.
+     */
+    private static int[] swingArea(Room room, int dx, int dy, int dw, int dh) {
+        Side side = Side.of(room.width, room.height, dx, dy, dw, dh);
+        if (side == null) return null;
+        switch (side) {
+            case NORTH:
+                return new int[]{dx, dy + dh, dw, dw};
+            case SOUTH:
+                return new int[]{dx, dy - dw, dw, dw};
+            case WEST:
+                return new int[]{dx + dw, dy, dh, dh};
+            default:
+                return new int[]{dx - dh, dy, dh, dh};
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Immutable room value. Edits produce a new instance through the {@code with*}
+ * methods, so unchanged rooms and their element arrays are shared freely.
+ * Door, window and furniture coordinates are relative to the room's top-left corner
+ * and are kept as packed {@link ElementGeometry} rather than per-element objects.
+ */
+final class Room {
+    final int id;
+    final String name;
+    final int x, y, width, height;
+    final int color;
+    final ElementGeometry doors;
+    final ElementGeometry windows;
+    final ElementGeometry furniture;
+
+    Room(String name, int x, int y, int width, int height, int color) {
+        this(0, name, x, y, width, height, color, ElementGeometry.EMPTY, ElementGeometry.EMPTY, ElementGeometry.EMPTY);
+    }
+
+    Room(int id, String name, int x, int y, int width, int height, int color,
+         ElementGeometry doors, ElementGeometry windows, ElementGeometry furniture) {
+        this.id = id;
+        this.name = name;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.color = color;
+        this.doors = doors;
+        this.windows = windows;
+        this.furniture = furniture;
+    }
+
+    Room withId(int newId) {
+        return new Room(newId, name, x, y, width, height, color, doors, windows, furniture);
+    }
+
+    Room withLocation(int newX, int newY) {
+        if (newX == x && newY == y) return this;
+        return new Room(id, name, newX, newY, width, height, color, doors, windows, furniture);
+    }
+
+    Room withBounds(int newX, int newY, int newWidth, int newHeight) {
+        if (newX == x && newY == y && newWidth == width && newHeight == height) return this;
+        return new Room(id, name, newX, newY, newWidth, newHeight, color, doors, windows, furniture);
+    }
+
+    Room withDoor(int doorX, int doorY, int doorWidth, int doorHeight) {
+        return new Room(id, name, x, y, width, height, color,
+                doors.with(doorX, doorY, doorWidth, doorHeight), windows, furniture);
+    }
+
+    Room withWindow(int windowX, int windowY, int windowWidth, int windowHeight) {
+        return new Room(id, name, x, y, width, height, color,
+                doors, windows.with(windowX, windowY, windowWidth, windowHeight), furniture);
+    }
+
+    Room withFurniture(FurnitureType type, int itemX, int itemY, int itemWidth, int itemHeight) {
+        return new Room(id, name, x, y, width, height, color,
+                doors, windows, furniture.with(type, itemX, itemY, itemWidth, itemHeight));
+    }
+
+    boolean contains(int px, int py) {
+        return px >= x && py >= y && px < x + width && py < y + height;
+    }
+
+    boolean intersects(int ox, int oy, int ow, int oh) {
+        return SpatialIndex.intersects(x, y, width, height, ox, oy, ow, oh);
+    }
+
+    boolean checkFurnitureOverlap(int itemX, int itemY, int itemWidth, int itemHeight) {
+        return furniture.intersectsAny(itemX, itemY, itemWidth, itemHeight);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
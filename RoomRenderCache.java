@@ -0,0 +1,134 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Per-room rasters reused across frames. Rooms are immutable, so an entry
+ * stays valid for as long as the room keeps its size and contents; a move
+ * only changes where the raster is drawn. Any other edit produces a room
+ * with a different name, colour or element array and the entry is rebuilt
+ * on next use.
+ *
+ * <p>Entries are kept in least-recently-used order under a byte budget.
+ * Entries drawn in the current frame are never evicted to make room for
+ * another; when the visible rooms do not fit, the rest are drawn directly
+ * rather than thrashing the cache.
+ */
+final class RoomRenderCache {
+    static final long DEFAULT_BUDGET_BYTES = 64L << 20;
+    private static final int MAX_ENTRY_PIXELS = 1 << 20;
+
+    private final long budgetBytes;
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long retainedBytes = 0;
+    private int frame = 0;
+    private int rebuildCount = 0;
+
+    private static final class Entry {
+        final Room room;
+        final double scale;
+        final BufferedImage image;
+        int lastFrame;
+
+        Entry(Room room, double scale, BufferedImage image) {
+            this.room = room;
+            this.scale = scale;
+            this.image = image;
+        }
+
+        long bytes() {
+            return 4L * image.getWidth() * image.getHeight();
+        }
+    }
+
+    RoomRenderCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /** Number of rasters built so far, for checking that unchanged rooms are not redrawn. */
+    public int getRebuildCount() {
+        return rebuildCount;
+    }
+
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Marks the start of a frame; entries used from here on are pinned until the next call. */
+    public void beginFrame() {
+        frame++;
+    }
+
+    /**
+     * Returns a raster of {@code room} at {@code deviceScale} pixels per model
+     * unit, building it if needed, or {@code null} if it is too large to cache
+     * or the budget is taken up by rooms of the current frame.
+     */
+    public BufferedImage get(Room room, double deviceScale, boolean antialias) {
+        Entry entry = entries.get(room.id);
+        if (entry != null && entry.scale == deviceScale && sameAppearance(entry.room, room)) {
+            entry.lastFrame = frame;
+            return entry.image;
+        }
+        if (entry != null) {
+            remove(room.id);
+        }
+
+        int iw = (int) Math.ceil(room.width * deviceScale);
+        int ih = (int) Math.ceil(room.height * deviceScale);
+        if (iw <= 0 || ih <= 0 || (long) iw * ih > MAX_ENTRY_PIXELS) return null;
+        long bytes = 4L * iw * ih;
+        if (!makeRoom(bytes)) return null;
+
+        BufferedImage image = new BufferedImage(iw, ih, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D ig = image.createGraphics();
+        try {
+            ig.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialias
+                    ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+            ig.scale((double) iw / room.width, (double) ih / room.height);
+            ig.translate(-room.x, -room.y);
+            FloorPlanCanvas.paintRoom(ig, room, false, deviceScale, false);
+        } finally {
+            ig.dispose();
+        }
+        rebuildCount++;
+        entry = new Entry(room, deviceScale, image);
+        entry.lastFrame = frame;
+        entries.put(room.id, entry);
+        retainedBytes += bytes;
+        return image;
+    }
+
+    private boolean makeRoom(long bytes) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (retainedBytes + bytes > budgetBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            if (eldest.lastFrame == frame) return false;
+            retainedBytes -= eldest.bytes();
+            it.remove();
+        }
+        return retainedBytes + bytes <= budgetBytes;
+    }
+
+    public void remove(int id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) retainedBytes -= entry.bytes();
+    }
+
+    public void clear() {
+        entries.clear();
+        retainedBytes = 0;
+    }
+
+    /** True when both rooms would draw the same pixels at the same origin. */
+    static boolean sameAppearance(Room a, Room b) {
+        return a == b || (a.width == b.width && a.height == b.height && a.color == b.color
+                && a.name.equals(b.name) && a.doors == b.doors && a.windows == b.windows
+                && a.furniture == b.furniture);
+    }
+}
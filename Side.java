@@ -0,0 +1,34 @@
+/**
+ * Wall of a room. Used both for placing doors and windows on a wall and for
+ * placing a new room next to an existing one.
+ */
+enum Side {
+    NORTH("North"),
+    SOUTH("South"),
+    EAST("East"),
+    WEST("West");
+
+    final String label;
+
+    Side(String label) {
+        this.label = label;
+    }
+
+    /**
+     * The wall an element with the given bounds, relative to a room of the
+     * given size, sits on, or {@code null} if it touches none. An element in a
+     * corner touches two walls and belongs to the one it runs along.
+     */
+    static Side of(int roomWidth, int roomHeight, int x, int y, int width, int height) {
+        boolean north = y <= 0, south = y + height >= roomHeight;
+        boolean west = x <= 0, east = x + width >= roomWidth;
+        if ((north || south) && (!(west || east) || width >= height)) return north ? NORTH : SOUTH;
+        if (west || east) return west ? WEST : EAST;
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+/**
+ * Uniform grid index over axis-aligned rectangles. Each item is registered in
+ * every cell its bounds touch, so a query only visits the items stored in the
+ * cells under the query rectangle instead of the whole plan.
+ */
+final class SpatialIndex<T> {
+    private final int cellSize;
+    private final HashMap<Long, ArrayList<Entry<T>>> cells = new HashMap<>();
+    private final HashMap<T, Entry<T>> entries = new HashMap<>();
+    private int queryStamp = 0;
+
+    SpatialIndex(int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    private static final class Entry<T> {
+        final T item;
+        int x, y, width, height;
+        int stamp;
+
+        Entry(T item) {
+            this.item = item;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean contains(T item) {
+        return entries.containsKey(item);
+    }
+
+    public void insert(T item, int x, int y, int width, int height) {
+        if (entries.containsKey(item)) {
+            update(item, x, y, width, height);
+            return;
+        }
+        Entry<T> entry = new Entry<>(item);
+        entries.put(item, entry);
+        place(entry, x, y, width, height);
+    }
+
+    public void update(T item, int x, int y, int width, int height) {
+        Entry<T> entry = entries.get(item);
+        if (entry == null) {
+            insert(item, x, y, width, height);
+            return;
+        }
+        if (entry.x == x && entry.y == y && entry.width == width && entry.height == height) {
+            return;
+        }
+        if (sameCells(entry, x, y, width, height)) {
+            entry.x = x;
+            entry.y = y;
+            entry.width = width;
+            entry.height = height;
+            return;
+        }
+        unplace(entry);
+        place(entry, x, y, width, height);
+    }
+
+    public void remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry != null) {
+            unplace(entry);
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        entries.clear();
+    }
+
+    /**
+     * Returns the first item whose bounds overlap the given rectangle, ignoring
+     * {@code exclude}, or {@code null} if the area is free. Rectangles that only
+     * share an edge do not overlap, matching {@link java.awt.Rectangle#intersects}.
+     */
+    public T findIntersecting(int x, int y, int width, int height, T exclude) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        int stamp = nextStamp();
+        int cx0 = Math.floorDiv(x, cellSize), cx1 = Math.floorDiv(x + width - 1, cellSize);
+        int cy0 = Math.floorDiv(y, cellSize), cy1 = Math.floorDiv(y + height - 1, cellSize);
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                ArrayList<Entry<T>> cell = cells.get(key(cx, cy));
+                if (cell == null) continue;
+                for (int i = 0, n = cell.size(); i < n; i++) {
+                    Entry<T> e = cell.get(i);
+                    if (e.stamp == stamp) continue;
+                    e.stamp = stamp;
+                    if (!e.item.equals(exclude) && intersects(x, y, width, height, e.x, e.y, e.width, e.height)) {
+                        return e.item;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Passes every item overlapping the given rectangle to {@code action} exactly once. */
+    public void query(int x, int y, int width, int height, Consumer<? super T> action) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int stamp = nextStamp();
+        int cx0 = Math.floorDiv(x, cellSize), cx1 = Math.floorDiv(x + width - 1, cellSize);
+        int cy0 = Math.floorDiv(y, cellSize), cy1 = Math.floorDiv(y + height - 1, cellSize);
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                ArrayList<Entry<T>> cell = cells.get(key(cx, cy));
+                if (cell == null) continue;
+                for (int i = 0, n = cell.size(); i < n; i++) {
+                    Entry<T> e = cell.get(i);
+                    if (e.stamp == stamp) continue;
+                    e.stamp = stamp;
+                    if (intersects(x, y, width, height, e.x, e.y, e.width, e.height)) {
+                        action.accept(e.item);
+                    }
+                }
+            }
+        }
+    }
+
+    static boolean intersects(int ax, int ay, int aw, int ah, int bx, int by, int bw, int bh) {
+        return aw > 0 && ah > 0 && bw > 0 && bh > 0
+                && ax < bx + bw && bx < ax + aw
+                && ay < by + bh && by < ay + ah;
+    }
+
+    private int nextStamp() {
+        if (++queryStamp == 0) {
+            for (Entry<T> e : entries.values()) {
+                e.stamp = 0;
+            }
+            queryStamp = 1;
+        }
+        return queryStamp;
+    }
+
+    private boolean sameCells(Entry<T> e, int x, int y, int width, int height) {
+        return Math.floorDiv(e.x, cellSize) == Math.floorDiv(x, cellSize)
+                && Math.floorDiv(e.y, cellSize) == Math.floorDiv(y, cellSize)
+                && Math.floorDiv(e.x + Math.max(e.width, 1) - 1, cellSize) == Math.floorDiv(x + Math.max(width, 1) - 1, cellSize)
+                && Math.floorDiv(e.y + Math.max(e.height, 1) - 1, cellSize) == Math.floorDiv(y + Math.max(height, 1) - 1, cellSize);
+    }
+
+    private void place(Entry<T> e, int x, int y, int width, int height) {
+        e.x = x;
+        e.y = y;
+        e.width = width;
+        e.height = height;
+        int cx0 = Math.floorDiv(x, cellSize), cx1 = Math.floorDiv(x + Math.max(width, 1) - 1, cellSize);
+        int cy0 = Math.floorDiv(y, cellSize), cy1 = Math.floorDiv(y + Math.max(height, 1) - 1, cellSize);
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>(4)).add(e);
+            }
+        }
+    }
+
+    private void unplace(Entry<T> e) {
+        int cx0 = Math.floorDiv(e.x, cellSize), cx1 = Math.floorDiv(e.x + Math.max(e.width, 1) - 1, cellSize);
+        int cy0 = Math.floorDiv(e.y, cellSize), cy1 = Math.floorDiv(e.y + Math.max(e.height, 1) - 1, cellSize);
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                Long k = key(cx, cy);
+                ArrayList<Entry<T>> cell = cells.get(k);
+                if (cell == null) continue;
+                cell.remove(e);
+                if (cell.isEmpty()) {
+                    cells.remove(k);
+                }
+            }
+        }
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+}
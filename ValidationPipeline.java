@@ -0,0 +1,106 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs {@link PlanValidator} in the background while the plan is edited.
+ * After each change the plan's current {@link PlanSnapshot} is checked on a
+ * worker thread; the problems found are handed back on the plan's thread.
+ * At most one check runs at a time. Changes made meanwhile mark the running
+ * check stale: it stops early, its result is dropped, and one new check of
+ * the latest rooms follows, so a drag costs at most one check in flight and
+ * never blocks the plan's thread. A check that throws reports no problems;
+ * the failure is logged to standard error, once until a check succeeds again.
+ */
+final class ValidationPipeline implements FloorPlan.Listener {
+    private final FloorPlan plan;
+    private final Executor modelThread;
+    private final Consumer<List<PlanValidator.Problem>> results;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "validation");
+        t.setDaemon(true);
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        return t;
+    });
+    private volatile long version;
+    /** The last failure logged, touched only by the worker. */
+    private String lastFailure;
+    private boolean running = false;
+    private boolean started = false;
+
+    /**
+     * @param modelThread runs work on the thread that owns {@code plan}, such as
+     *                    {@code SwingUtilities::invokeLater}
+     * @param results     receives the problems of each current check on that thread
+     */
+    ValidationPipeline(FloorPlan plan, Executor modelThread, Consumer<List<PlanValidator.Problem>> results) {
+        this.plan = plan;
+        this.modelThread = modelThread;
+        this.results = results;
+    }
+
+    /** Starts checking, beginning with the rooms already in the plan. */
+    void start() {
+        if (started) return;
+        started = true;
+        plan.addListener(this);
+        version = plan.getVersion();
+        schedule();
+    }
+
+    /** Stops checking and reports an empty result; a check in flight is dropped. */
+    void stop() {
+        if (!started) return;
+        started = false;
+        plan.removeListener(this);
+        version = -1;
+        results.accept(Collections.emptyList());
+    }
+
+    boolean isStarted() {
+        return started;
+    }
+
+    @Override
+    public void planChanged(FloorPlan.Change change) {
+        version = plan.getVersion();
+        schedule();
+    }
+
+    private void schedule() {
+        if (running || !started) return;
+        running = true;
+        PlanSnapshot snapshot = plan.snapshot();
+        long snapshotVersion = snapshot.getVersion();
+        worker.execute(() -> {
+            List<PlanValidator.Problem> problems = null;
+            try {
+                problems = PlanValidator.validate(snapshot.rooms(), () -> version != snapshotVersion);
+                lastFailure = null;
+            } catch (RuntimeException e) {
+                problems = Collections.emptyList();
+                if (!e.toString().equals(lastFailure)) {
+                    lastFailure = e.toString();
+                    System.err.println("Validation failed:");
+                    e.printStackTrace();
+                }
+            } finally {
+                List<PlanValidator.Problem> found = problems;
+                modelThread.execute(() -> finished(snapshotVersion, found));
+            }
+        });
+    }
+
+    private void finished(long snapshotVersion, List<PlanValidator.Problem> problems) {
+        running = false;
+        if (!started) return;
+        if (problems == null || snapshotVersion != plan.getVersion()) {
+            schedule();
+        } else {
+            results.accept(problems);
+        }
+    }
+}
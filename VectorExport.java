@@ -0,0 +1,419 @@
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Writes plans as SVG or PDF. Rooms and their elements are written to the
+ * stream one at a time as they are visited, so the drawing itself is never
+ * held in memory. Walls are written last as one filled path with gaps at
+ * doors, so the output matches the editor's {@link FloorPlanCanvas#paintRoom}
+ * and {@link FloorPlanCanvas#paintWalls} at full detail, with each shared wall
+ * drawn once. Merging walls needs every edge on a line, so the room edges and
+ * doors are kept as sorted arrays of packed coordinates while the walls are
+ * written, about 40 bytes per room; that is the only memory that grows with
+ * the plan.
+ *
+ * <p>The PDF is a single PDF 1.4 page using the standard Helvetica-Bold font,
+ * scaled down if the plan is larger than the maximum page size. Translucent
+ * room colours are composited over white there, since PDF transparency would
+ * need a graphics state per alpha value.
+ */
+final class VectorExport {
+    private static final int MARGIN = FloorPlan.GRID_SPACING;
+    /** Largest page side most PDF readers accept, in points. */
+    private static final double PDF_MAX_SIDE = 14400;
+    private static final FontRenderContext FONT_CONTEXT = new FontRenderContext(null, true, true);
+
+    private VectorExport() {}
+
+    /** Writes SVG when the file name ends in ".svg" and PDF when it ends in ".pdf". */
+    static void export(Collection<Room> rooms, Path path) throws IOException {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (!name.endsWith(".svg") && !name.endsWith(".pdf")) {
+            throw new IOException("Export file name must end in .svg or .pdf");
+        }
+        try (OutputStream out = Files.newOutputStream(path)) {
+            if (name.endsWith(".svg")) {
+                writeSvg(rooms, out);
+            } else {
+                writePdf(rooms, out);
+            }
+        }
+    }
+
+    /** Plan bounds plus a margin, as {x, y, width, height}. */
+    private static int[] bounds(Collection<Room> rooms) {
+        if (rooms.isEmpty()) return new int[]{0, 0, 2 * MARGIN, 2 * MARGIN};
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (Room room : rooms) {
+            minX = Math.min(minX, room.x);
+            minY = Math.min(minY, room.y);
+            maxX = Math.max(maxX, room.x + room.width);
+            maxY = Math.max(maxY, room.y + room.height);
+        }
+        return new int[]{minX - MARGIN, minY - MARGIN, maxX - minX + 2 * MARGIN, maxY - minY + 2 * MARGIN};
+    }
+
+    static void writeSvg(Collection<Room> rooms, OutputStream target) throws IOException {
+        int[] b = bounds(rooms);
+        Writer w = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 1 << 16);
+        float[] coords = new float[6];
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        w.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"" + b[2] + "\" height=\"" + b[3]
+                + "\" viewBox=\"" + b[0] + " " + b[1] + " " + b[2] + " " + b[3] + "\">\n");
+        w.write("<style>.door{fill:#404040}.window{fill:#c0c0c0}.wall{fill:#000}"
+                + ".label{fill:#fff;font:bold 14px Arial,Helvetica,sans-serif;text-anchor:middle;dominant-baseline:central}"
+                + "</style>\n");
+        for (Room room : rooms) {
+            w.write("<g transform=\"translate(" + room.x + " " + room.y + ")\">");
+            w.write("<rect width=\"" + room.width + "\" height=\"" + room.height + "\" fill=\"" + hex(room.color) + "\"");
+            int alpha = room.color >>> 24;
+            if (alpha != 255) {
+                w.write(" fill-opacity=\"" + number(alpha / 255.0) + "\"");
+            }
+            w.write("/>");
+            svgRects(w, room.doors, "door");
+            svgRects(w, room.windows, "window");
+            ElementGeometry furniture = room.furniture;
+            for (int i = 0; i < furniture.size(); i++) {
+                FurnitureType type = furniture.type(i);
+                w.write("<path fill=\"" + hex(type.color.getRGB()) + "\" d=\"");
+                writePath(w, type.outline(furniture.x(i), furniture.y(i), furniture.width(i), furniture.height(i)),
+                        coords, true);
+                w.write("\"/>");
+            }
+            w.write("<text class=\"label\" x=\"" + number(room.width / 2.0) + "\" y=\"" + number(room.height / 2.0) + "\">");
+            w.write(xml(room.name));
+            w.write("</text></g>\n");
+        }
+        if (!rooms.isEmpty()) {
+            w.write("<path class=\"wall\" d=\"");
+            writeWalls(w, rooms, coords, true);
+            w.write("\"/>\n");
+        }
+        w.write("</svg>\n");
+        w.flush();
+    }
+
+    private static void svgRects(Writer w, ElementGeometry rects, String cls) throws IOException {
+        for (int i = 0; i < rects.size(); i++) {
+            w.write("<rect class=\"" + cls + "\" x=\"" + rects.x(i) + "\" y=\"" + rects.y(i)
+                    + "\" width=\"" + rects.width(i) + "\" height=\"" + rects.height(i) + "\"/>");
+        }
+    }
+
+    static void writePdf(Collection<Room> rooms, OutputStream target) throws IOException {
+        int[] b = bounds(rooms);
+        double scale = Math.min(1.0, PDF_MAX_SIDE / Math.max(b[2], b[3]));
+        double pageWidth = b[2] * scale, pageHeight = b[3] * scale;
+        Font labelFont = FloorPlanCanvas.LABEL_FONT;
+        float[] coords = new float[6];
+
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(target, 1 << 16));
+        Writer w = new OutputStreamWriter(counter, StandardCharsets.ISO_8859_1);
+        long[] offsets = new long[6];
+        w.write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+
+        offsets[1] = position(w, counter);
+        w.write("1 0 obj\n<< /Type /Catalog /Pages 2 0 R >>\nendobj\n");
+        offsets[2] = position(w, counter);
+        w.write("2 0 obj\n<< /Type /Pages /Kids [3 0 R] /Count 1 >>\nendobj\n");
+        offsets[3] = position(w, counter);
+        w.write("3 0 obj\n<< /Type /Page /Parent 2 0 R /MediaBox [0 0 " + number(pageWidth) + " " + number(pageHeight)
+                + "] /Resources << /Font << /F1 << /Type /Font /Subtype /Type1 /BaseFont /Helvetica-Bold"
+                + " /Encoding /WinAnsiEncoding >> >> >> /Contents 4 0 R >>\nendobj\n");
+        offsets[4] = position(w, counter);
+        w.write("4 0 obj\n<< /Length 5 0 R >>\nstream\n");
+        long streamStart = position(w, counter);
+
+        // Flip to the model's y-down coordinates and scale to the page.
+        w.write(number(scale) + " 0 0 " + number(-scale) + " " + number(-b[0] * scale) + " "
+                + number(pageHeight + b[1] * scale) + " cm\n");
+        for (Room room : rooms) {
+            w.write("q 1 0 0 1 " + room.x + " " + room.y + " cm\n");
+            w.write(pdfColor(room.color) + " rg 0 0 " + room.width + " " + room.height + " re f\n");
+            if (!room.doors.isEmpty()) {
+                w.write("0.251 0.251 0.251 rg\n");
+                pdfRects(w, room.doors);
+            }
+            if (!room.windows.isEmpty()) {
+                w.write("0.753 0.753 0.753 rg\n");
+                pdfRects(w, room.windows);
+            }
+            ElementGeometry furniture = room.furniture;
+            for (int i = 0; i < furniture.size(); i++) {
+                FurnitureType type = furniture.type(i);
+                w.write(pdfColor(type.color.getRGB()) + " rg ");
+                writePath(w, type.outline(furniture.x(i), furniture.y(i), furniture.width(i), furniture.height(i)),
+                        coords, false);
+                w.write("f\n");
+            }
+            double textWidth = labelFont.getStringBounds(room.name, FONT_CONTEXT).getWidth();
+            double baseline = room.height / 2.0 + labelFont.getSize2D() * 0.35;
+            w.write("1 g BT /F1 " + labelFont.getSize() + " Tf 1 0 0 -1 " + number((room.width - textWidth) / 2)
+                    + " " + number(baseline) + " Tm (" + pdfString(room.name) + ") Tj ET Q\n");
+        }
+        if (!rooms.isEmpty()) {
+            w.write("0 g ");
+            writeWalls(w, rooms, coords, false);
+            w.write("f\n");
+        }
+
+        long streamLength = position(w, counter) - streamStart;
+        w.write("endstream\nendobj\n");
+        offsets[5] = position(w, counter);
+        w.write("5 0 obj\n" + streamLength + "\nendobj\n");
+        long xref = position(w, counter);
+        w.write("xref\n0 6\n0000000000 65535 f \n");
+        for (int i = 1; i < offsets.length; i++) {
+            w.write(String.format(Locale.ROOT, "%010d 00000 n \n", offsets[i]));
+        }
+        w.write("trailer\n<< /Size 6 /Root 1 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+        w.flush();
+    }
+
+    /**
+     * Writes the walls as {@link WallGraph#wallPath} would give them for
+     * {@code rooms}, without building the graph: the edges and doors of one
+     * direction are sorted and swept line by line, and a wall is drawn
+     * wherever an edge covers the line and no door does.
+     */
+    private static void writeWalls(Writer w, Collection<Room> rooms, float[] coords, boolean svg) throws IOException {
+        float half = FloorPlanCanvas.WALL_THICKNESS / 2;
+        Path2D.Float path = new Path2D.Float();
+        for (boolean horizontal : new boolean[]{true, false}) {
+            Intervals edges = new Intervals(2 * rooms.size()), doors = new Intervals(16);
+            for (Room room : rooms) {
+                int a0 = horizontal ? room.x : room.y, a1 = a0 + (horizontal ? room.width : room.height);
+                int p0 = horizontal ? room.y : room.x, p1 = p0 + (horizontal ? room.height : room.width);
+                edges.add(p0, a0, a1);
+                edges.add(p1, a0, a1);
+                ElementGeometry rects = room.doors;
+                for (int i = 0; i < rects.size(); i++) {
+                    Side side = Side.of(room.width, room.height, rects.x(i), rects.y(i), rects.width(i), rects.height(i));
+                    if (side == null || (side == Side.NORTH || side == Side.SOUTH) != horizontal) continue;
+                    int from = a0 + (horizontal ? rects.x(i) : rects.y(i));
+                    int to = from + (horizontal ? rects.width(i) : rects.height(i));
+                    if (from < a0 || to > a1) continue;
+                    doors.add(side == Side.NORTH || side == Side.WEST ? p0 : p1, from, to);
+                }
+            }
+            edges.sort();
+            doors.sort();
+            int es = 0, ee = 0, ds = 0, de = 0;
+            int covered = 0, open = 0, line = 0, from = 0;
+            while (ee < edges.size) {
+                long key = edges.ends[ee];
+                if (es < edges.size) key = Math.min(key, edges.starts[es]);
+                if (ds < doors.size) key = Math.min(key, doors.starts[ds]);
+                if (de < doors.size) key = Math.min(key, doors.ends[de]);
+                if (Intervals.position(key) != line) {
+                    writePath(w, path, coords, svg);
+                    path.reset();
+                    line = Intervals.position(key);
+                }
+                boolean on = covered > 0 && open == 0;
+                for (; es < edges.size && edges.starts[es] == key; es++) covered++;
+                for (; ds < doors.size && doors.starts[ds] == key; ds++) open++;
+                for (; ee < edges.size && edges.ends[ee] == key; ee++) covered--;
+                for (; de < doors.size && doors.ends[de] == key; de++) open--;
+                int along = Intervals.along(key);
+                if (on != (covered > 0 && open == 0)) {
+                    if (on) {
+                        WallGraph.segment(path, horizontal, Intervals.position(key), from, along, half);
+                    } else {
+                        from = along;
+                    }
+                }
+            }
+            writePath(w, path, coords, svg);
+            path.reset();
+        }
+    }
+
+    /**
+     * Intervals on parallel lines, their starts and their ends sorted apart.
+     * Each is a key holding the line's position in the high half and the
+     * coordinate along it in the low half, so keys sort by line and then along it.
+     */
+    private static final class Intervals {
+        long[] starts, ends;
+        int size;
+
+        Intervals(int capacity) {
+            starts = new long[Math.max(capacity, 1)];
+            ends = new long[starts.length];
+        }
+
+        void add(int position, int from, int to) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * size);
+                ends = Arrays.copyOf(ends, 2 * size);
+            }
+            starts[size] = key(position, from);
+            ends[size++] = key(position, to);
+        }
+
+        void sort() {
+            Arrays.sort(starts, 0, size);
+            Arrays.sort(ends, 0, size);
+        }
+
+        static long key(int position, int along) {
+            return (long) position << 32 | ((along ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+        }
+
+        static int position(long key) {
+            return (int) (key >> 32);
+        }
+
+        static int along(long key) {
+            return (int) key ^ Integer.MIN_VALUE;
+        }
+    }
+
+    private static void pdfRects(Writer w, ElementGeometry rects) throws IOException {
+        for (int i = 0; i < rects.size(); i++) {
+            w.write(rects.x(i) + " " + rects.y(i) + " " + rects.width(i) + " " + rects.height(i) + " re ");
+        }
+        w.write("f\n");
+    }
+
+    /** Writes a shape as SVG path data or as PDF path operators. */
+    private static void writePath(Writer w, Shape shape, float[] c, boolean svg) throws IOException {
+        float lastX = 0, lastY = 0;
+        for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+            switch (it.currentSegment(c)) {
+                case PathIterator.SEG_MOVETO:
+                    w.write(svg ? "M" + number(c[0]) + " " + number(c[1])
+                            : number(c[0]) + " " + number(c[1]) + " m ");
+                    lastX = c[0];
+                    lastY = c[1];
+                    break;
+                case PathIterator.SEG_LINETO:
+                    w.write(svg ? "L" + number(c[0]) + " " + number(c[1])
+                            : number(c[0]) + " " + number(c[1]) + " l ");
+                    lastX = c[0];
+                    lastY = c[1];
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    if (svg) {
+                        w.write("Q" + number(c[0]) + " " + number(c[1]) + " " + number(c[2]) + " " + number(c[3]));
+                    } else {
+                        // PDF only has cubic curves; raise the degree.
+                        w.write(number(lastX + 2 * (c[0] - lastX) / 3) + " " + number(lastY + 2 * (c[1] - lastY) / 3) + " "
+                                + number(c[2] + 2 * (c[0] - c[2]) / 3) + " " + number(c[3] + 2 * (c[1] - c[3]) / 3) + " "
+                                + number(c[2]) + " " + number(c[3]) + " c ");
+                    }
+                    lastX = c[2];
+                    lastY = c[3];
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    w.write((svg ? "C" : "") + number(c[0]) + " " + number(c[1]) + " " + number(c[2]) + " "
+                            + number(c[3]) + " " + number(c[4]) + " " + number(c[5]) + (svg ? "" : " c "));
+                    lastX = c[4];
+                    lastY = c[5];
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    w.write(svg ? "Z" : "h ");
+                    break;
+            }
+        }
+    }
+
+    private static long position(Writer w, CountingOutputStream counter) throws IOException {
+        w.flush();
+        return counter.count;
+    }
+
+    private static String hex(int argb) {
+        String digits = Integer.toHexString(argb & 0xFFFFFF | 0x1000000);
+        return "#" + digits.substring(1);
+    }
+
+    /** RGB operands for a colour composited over white. */
+    private static String pdfColor(int argb) {
+        double alpha = (argb >>> 24) / 255.0;
+        return number(over(argb >> 16, alpha)) + " " + number(over(argb >> 8, alpha)) + " " + number(over(argb, alpha));
+    }
+
+    private static double over(int channel, double alpha) {
+        return ((channel & 0xFF) * alpha + 255 * (1 - alpha)) / 255.0;
+    }
+
+    /** Formats with at most three decimals and no exponent. */
+    static String number(double v) {
+        long rounded = Math.round(v * 1000);
+        if (rounded % 1000 == 0) return Long.toString(rounded / 1000);
+        StringBuilder sb = new StringBuilder(12);
+        if (rounded < 0) sb.append('-');
+        rounded = Math.abs(rounded);
+        sb.append(rounded / 1000).append('.');
+        int fraction = (int) (rounded % 1000);
+        for (int digit = 100; fraction != 0; digit /= 10) {
+            sb.append((char) ('0' + fraction / digit));
+            fraction %= digit;
+        }
+        return sb.toString();
+    }
+
+    private static String xml(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '<': sb.append("&lt;"); break;
+                case '>': sb.append("&gt;"); break;
+                case '&': sb.append("&amp;"); break;
+                case '"': sb.append("&quot;"); break;
+                default:
+                    if (c >= 0x20 || c == '\t') sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /** Escapes a string literal for WinAnsi text; characters outside Latin-1 become '?'. */
+    private static String pdfString(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20 || c > 0xFF) {
+                sb.append('?');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Walls of a plan derived from its room rectangles. Every room edge lies on a
+ * horizontal or vertical line; on each line the edges of all rooms are merged
+ * into maximal walls, so a wall shared by two rooms, or running straight past
+ * several of them, is one segment. Doors and windows that sit on a room edge
+ * become openings of the wall they lie on. Walls meet where a horizontal and a
+ * vertical line cross, which {@link #wallsAt} looks up.
+ *
+ * <p>The graph is updated from plan changes: only the lines the changed rooms
+ * touch are merged again, and only when next read. The same holds for the
+ * running {@link #wallLength}.
+ */
+final class WallGraph {
+    /** A maximal straight wall from {@code start} to {@code end} along its line. */
+    static final class Wall {
+        final boolean horizontal;
+        /** The y of a horizontal wall or the x of a vertical one. */
+        final int position;
+        final int start, end;
+        private List<Opening> openings = Collections.emptyList();
+
+        Wall(boolean horizontal, int position, int start, int end) {
+            this.horizontal = horizontal;
+            this.position = position;
+            this.start = start;
+            this.end = end;
+        }
+
+        int length() {
+            return end - start;
+        }
+
+        /** Doors and windows in this wall, ordered by where they start. */
+        List<Opening> openings() {
+            return openings;
+        }
+
+        boolean contains(int from, int to) {
+            return from >= start && to <= end;
+        }
+
+        @Override
+        public String toString() {
+            return (horizontal ? "y=" : "x=") + position + " [" + start + ", " + end + "]";
+        }
+    }
+
+    /** A door or window occupying {@code [start, end)} along a wall. */
+    static final class Opening {
+        final boolean door;
+        final int start, end;
+
+        Opening(boolean door, int start, int end) {
+            this.door = door;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class Line {
+        final boolean horizontal;
+        final int position;
+        /** Edge and opening intervals with how many rooms contribute each. */
+        final HashMap<Long, Integer> edges = new HashMap<>();
+        final HashMap<Long, Integer> doors = new HashMap<>();
+        final HashMap<Long, Integer> windows = new HashMap<>();
+        Wall[] walls;
+        /** Summed length of {@link #walls}, valid once they are merged. */
+        int length;
+        /** Whether {@link #length} is part of the graph's wall length, and whether the line waits to be. */
+        boolean counted, queued;
+
+        Line(boolean horizontal, int position) {
+            this.horizontal = horizontal;
+            this.position = position;
+        }
+
+        Wall[] walls() {
+            if (walls == null) merge();
+            return walls;
+        }
+
+        private void merge() {
+            long[] sorted = sortedKeys(edges);
+            ArrayList<Wall> merged = new ArrayList<>();
+            int start = 0, end = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                int s = start(sorted[i]), e = end(sorted[i]);
+                if (i > 0 && s <= end) {
+                    end = Math.max(end, e);
+                    continue;
+                }
+                if (i > 0) merged.add(new Wall(horizontal, position, start, end));
+                start = s;
+                end = e;
+            }
+            if (sorted.length > 0) merged.add(new Wall(horizontal, position, start, end));
+            walls = merged.toArray(new Wall[0]);
+            length = 0;
+            for (Wall wall : walls) length += wall.length();
+            attach(doors, true);
+            attach(windows, false);
+            if (!doors.isEmpty() && !windows.isEmpty()) {
+                for (Wall wall : walls) {
+                    if (wall.openings.size() > 1) wall.openings.sort((a, b) -> Integer.compare(a.start, b.start));
+                }
+            }
+        }
+
+        /** Hands each opening to the wall it lies on; an opening shared by two rooms is listed once. */
+        private void attach(HashMap<Long, Integer> openings, boolean door) {
+            for (long key : sortedKeys(openings)) {
+                Wall wall = find(walls, start(key), end(key));
+                if (wall == null) continue;
+                if (wall.openings.isEmpty()) wall.openings = new ArrayList<>(2);
+                wall.openings.add(new Opening(door, start(key), end(key)));
+            }
+        }
+
+        boolean isEmpty() {
+            return edges.isEmpty();
+        }
+    }
+
+    private final TreeMap<Integer, Line> horizontal = new TreeMap<>();
+    private final TreeMap<Integer, Line> vertical = new TreeMap<>();
+    private final ArrayList<Line> uncounted = new ArrayList<>();
+    private long wallLength = 0;
+
+    static WallGraph of(Collection<Room> rooms) {
+        WallGraph graph = new WallGraph();
+        for (Room room : rooms) {
+            graph.add(room);
+        }
+        return graph;
+    }
+
+    /**
+     * Brings the graph up to date after {@code change}. {@code rooms} are all
+     * rooms after it; they are only read after a clear.
+     */
+    void apply(FloorPlan.Change change, Collection<Room> rooms) {
+        if (change.cleared) {
+            horizontal.clear();
+            vertical.clear();
+            uncounted.clear();
+            wallLength = 0;
+            for (Room room : rooms) {
+                add(room);
+            }
+            return;
+        }
+        for (FloorPlan.Edit e : change.edits) {
+            if (e.before != null) remove(e.before);
+            if (e.after != null) add(e.after);
+        }
+    }
+
+    void add(Room room) {
+        update(room, 1);
+    }
+
+    void remove(Room room) {
+        update(room, -1);
+    }
+
+    /** Number of walls after merging. */
+    int wallCount() {
+        int count = 0;
+        for (Line line : horizontal.values()) count += line.walls().length;
+        for (Line line : vertical.values()) count += line.walls().length;
+        return count;
+    }
+
+    /** Total length of all walls, a wall shared by several rooms counted once. */
+    long wallLength() {
+        for (Line line : uncounted) {
+            line.queued = false;
+            if (line.isEmpty()) continue;
+            line.walls();
+            wallLength += line.length;
+            line.counted = true;
+        }
+        uncounted.clear();
+        return wallLength;
+    }
+
+    /** Calls {@code action} for every wall that touches the given area. */
+    void query(int x, int y, int width, int height, Consumer<Wall> action) {
+        query(horizontal, y, y + height, x, x + width, action);
+        query(vertical, x, x + width, y, y + height, action);
+    }
+
+    /** Walls passing through or ending at the point: at most one per direction. */
+    List<Wall> wallsAt(int x, int y) {
+        ArrayList<Wall> walls = new ArrayList<>(2);
+        Wall h = wallAt(true, y, x);
+        Wall v = wallAt(false, x, y);
+        if (h != null) walls.add(h);
+        if (v != null) walls.add(v);
+        return walls;
+    }
+
+    /** The wall on the given line covering {@code along}, or {@code null}. */
+    Wall wallAt(boolean horizontalLine, int position, int along) {
+        Line line = (horizontalLine ? horizontal : vertical).get(position);
+        return line == null ? null : find(line.walls(), along, along);
+    }
+
+    /** The wall that the given side of {@code room} is part of. */
+    Wall wallOf(Room room, Side side) {
+        switch (side) {
+            case NORTH:
+                return wallAt(true, room.y, room.x);
+            case SOUTH:
+                return wallAt(true, room.y + room.height, room.x);
+            case WEST:
+                return wallAt(false, room.x, room.y);
+            default:
+                return wallAt(false, room.x + room.width, room.y);
+        }
+    }
+
+    /**
+     * The walls touching the given area as one path to fill, each wall a
+     * rectangle {@code thickness} wide centred on its line, with a gap for
+     * every door.
+     */
+    Path2D wallPath(int x, int y, int width, int height, float thickness) {
+        Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO);
+        float half = thickness / 2;
+        query(x, y, width, height, wall -> {
+            int from = wall.start;
+            for (Opening opening : wall.openings) {
+                if (!opening.door) continue;
+                segment(path, wall, from, opening.start, half);
+                from = Math.max(from, opening.end);
+            }
+            segment(path, wall, from, wall.end, half);
+        });
+        return path;
+    }
+
+    /**
+     * Rooms with an edge on {@code wall} that covers {@code [start, start + length)},
+     * that is the rooms an opening placed there would belong to.
+     */
+    static List<Room> roomsAlong(FloorPlan plan, Wall wall, int start, int length) {
+        ArrayList<Room> rooms = new ArrayList<>(2);
+        int end = start + length;
+        int qx = wall.horizontal ? start : wall.position - 1;
+        int qy = wall.horizontal ? wall.position - 1 : start;
+        plan.query(qx, qy, wall.horizontal ? length : 2, wall.horizontal ? 2 : length, room -> {
+            int from = wall.horizontal ? room.x : room.y;
+            int to = from + (wall.horizontal ? room.width : room.height);
+            boolean onLine = wall.horizontal
+                    ? room.y == wall.position || room.y + room.height == wall.position
+                    : room.x == wall.position || room.x + room.width == wall.position;
+            if (onLine && from <= start && to >= end) rooms.add(room);
+        });
+        return rooms;
+    }
+
+    /**
+     * Rectangle, relative to {@code room}, of an opening {@code length} long at
+     * {@code start} along {@code wall} and reaching {@code depth} into the room,
+     * as {x, y, width, height}.
+     */
+    static int[] openingRect(Room room, Wall wall, int start, int length, int depth) {
+        if (wall.horizontal) {
+            int y = room.y == wall.position ? 0 : room.height - depth;
+            return new int[]{start - room.x, y, length, depth};
+        }
+        int x = room.x == wall.position ? 0 : room.width - depth;
+        return new int[]{x, start - room.y, depth, length};
+    }
+
+    private void update(Room room, int delta) {
+        int x0 = room.x, y0 = room.y, x1 = room.x + room.width, y1 = room.y + room.height;
+        count(line(horizontal, true, y0).edges, x0, x1, delta);
+        count(line(horizontal, true, y1).edges, x0, x1, delta);
+        count(line(vertical, false, x0).edges, y0, y1, delta);
+        count(line(vertical, false, x1).edges, y0, y1, delta);
+        openings(room, room.doors, true, delta);
+        openings(room, room.windows, false, delta);
+        prune(horizontal, y0);
+        prune(horizontal, y1);
+        prune(vertical, x0);
+        prune(vertical, x1);
+    }
+
+    /** Counts the openings that sit on an edge of the room; others belong to no wall. */
+    private void openings(Room room, ElementGeometry rects, boolean door, int delta) {
+        for (int i = 0; i < rects.size(); i++) {
+            int ox = room.x + rects.x(i), oy = room.y + rects.y(i);
+            int ow = rects.width(i), oh = rects.height(i);
+            Side side = Side.of(room.width, room.height, rects.x(i), rects.y(i), ow, oh);
+            if (side == null) continue;
+            Line line;
+            int from, to;
+            switch (side) {
+                case NORTH:
+                    line = line(horizontal, true, room.y);
+                    from = ox;
+                    to = ox + ow;
+                    break;
+                case SOUTH:
+                    line = line(horizontal, true, room.y + room.height);
+                    from = ox;
+                    to = ox + ow;
+                    break;
+                case WEST:
+                    line = line(vertical, false, room.x);
+                    from = oy;
+                    to = oy + oh;
+                    break;
+                default:
+                    line = line(vertical, false, room.x + room.width);
+                    from = oy;
+                    to = oy + oh;
+                    break;
+            }
+            count(door ? line.doors : line.windows, from, to, delta);
+        }
+    }
+
+    private Line line(TreeMap<Integer, Line> lines, boolean horizontal, int position) {
+        Line line = lines.get(position);
+        if (line == null) {
+            line = new Line(horizontal, position);
+            lines.put(position, line);
+        }
+        if (line.counted) {
+            wallLength -= line.length;
+            line.counted = false;
+        }
+        if (!line.queued) {
+            line.queued = true;
+            uncounted.add(line);
+        }
+        line.walls = null;
+        return line;
+    }
+
+    private static void prune(TreeMap<Integer, Line> lines, int position) {
+        Line line = lines.get(position);
+        if (line != null && line.isEmpty()) lines.remove(position);
+    }
+
+    private static void count(Map<Long, Integer> intervals, int start, int end, int delta) {
+        intervals.merge(((long) start << 32) | (end & 0xFFFFFFFFL), delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    private static int start(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int end(long key) {
+        return (int) key;
+    }
+
+    private static long[] sortedKeys(Map<Long, Integer> intervals) {
+        long[] keys = new long[intervals.size()];
+        int i = 0;
+        for (long key : intervals.keySet()) keys[i++] = key;
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /** The wall in {@code walls}, sorted by start, that covers {@code [from, to]}. */
+    private static Wall find(Wall[] walls, int from, int to) {
+        int lo = 0, hi = walls.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (walls[mid].end < from) {
+                lo = mid + 1;
+            } else if (walls[mid].start > from) {
+                hi = mid - 1;
+            } else {
+                return walls[mid].contains(from, to) ? walls[mid] : null;
+            }
+        }
+        return null;
+    }
+
+    private static void query(TreeMap<Integer, Line> lines, int p0, int p1, int a0, int a1, Consumer<Wall> action) {
+        for (Line line : lines.subMap(p0, true, p1, true).values()) {
+            Wall[] walls = line.walls();
+            int lo = 0, hi = walls.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (walls[mid].end < a0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < walls.length && walls[i].start <= a1; i++) {
+                action.accept(walls[i]);
+            }
+        }
+    }
+
+    private static void segment(Path2D.Float path, Wall wall, int from, int to, float half) {
+        segment(path, wall.horizontal, wall.position, from, to, half);
+    }
+
+    /**
+     * Adds the part of a wall on the given line from {@code from} to
+     * {@code to}, squared off {@code half} past each end, as {@link #wallPath}
+     * draws it.
+     */
+    static void segment(Path2D.Float path, boolean horizontal, int position, int from, int to, float half) {
+        if (to <= from) return;
+        float a0 = from - half, a1 = to + half;
+        float p0 = position - half, p1 = position + half;
+        if (horizontal) {
+            rect(path, a0, p0, a1, p1);
+        } else {
+            rect(path, p0, a0, p1, a1);
+        }
+    }
+
+    private static void rect(Path2D.Float path, float x0, float y0, float x1, float y1) {
+        path.moveTo(x0, y0);
+        path.lineTo(x1, y0);
+        path.lineTo(x1, y1);
+        path.lineTo(x0, y1);
+        path.closePath();
+    }
+}
@@ -0,0 +1,223 @@
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback test of the collaboration server. Starts a {@link CollabServer}
+ * in-process with a few full {@link CollabClient}s and many lightweight
+ * listeners that share one selector, so the run measures the server rather
+ * than hundreds of client threads competing for the same CPU. One client
+ * edits a room and the time until each listener receives the batch is
+ * recorded. Then two clients drag the same room at once and every client must
+ * end up with the same rooms. Exits with status 1 if the p99 propagation time
+ * is above 50 ms or the clients disagree.
+ *
+ * <pre>
+ *   javac -d out *.java bench/*.java
+ *   java -cp out CollabBenchmark [listeners] [edits] [interval ms]
+ * </pre>
+ * Defaults to 500 listeners and 200 edits 20 ms apart, the rate of a drag.
+ */
+public class CollabBenchmark {
+    private static final long P99_LIMIT_NANOS = 50_000_000L;
+    private static final int CLIENTS = 4;
+
+    public static void main(String[] args) throws Exception {
+        int listenerCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int edits = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int intervalMillis = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        CollabServer server = new CollabServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+
+        FloorPlan[] plans = new FloorPlan[CLIENTS];
+        ExecutorService[] threads = new ExecutorService[CLIENTS];
+        CollabClient[] clients = new CollabClient[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            plans[i] = new FloorPlan();
+            if (i == 0) plans[i].add(new Room("Shared", 0, 0, 100, 100, 0xFF8080FF));
+            threads[i] = Executors.newSingleThreadExecutor();
+            clients[i] = new CollabClient(plans[i], threads[i], Runnable::run);
+            clients[i].connect(address);
+            awaitRooms(plans[i], threads[i], clients[i]);
+        }
+
+        Listeners listeners = new Listeners(address, listenerCount, edits, server.getSequence());
+        System.out.printf(Locale.ROOT, "%d clients and %d listeners connected%n", CLIENTS, listenerCount);
+
+        int roomId = plans[0].rooms().iterator().next().id;
+        long start = System.nanoTime();
+        for (int i = 0; i < edits; i++) {
+            int x = i + 1;
+            int edit = i;
+            threads[0].submit(() -> {
+                listeners.sentAt[edit] = System.nanoTime();
+                plans[0].update(plans[0].get(roomId).withLocation(x, 0));
+            }).get();
+            Thread.sleep(intervalMillis);
+        }
+        long[] sorted = listeners.await(TimeUnit.SECONDS.toNanos(30));
+        long elapsed = System.nanoTime() - start;
+        boolean ok = sorted.length == (long) edits * listenerCount;
+        long p99 = sorted.length == 0 ? Long.MAX_VALUE : sorted[(int) Math.ceil(0.99 * sorted.length) - 1];
+        System.out.printf(Locale.ROOT, "propagation: %d of %d deliveries, p50 %.2f ms, p99 %.2f ms, max %.2f ms, %.0f deliveries/s%n",
+                sorted.length, (long) edits * listenerCount,
+                sorted.length == 0 ? 0 : sorted[sorted.length / 2] / 1e6, p99 / 1e6,
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6, sorted.length / (elapsed / 1e9));
+        ok &= p99 <= P99_LIMIT_NANOS;
+        listeners.close();
+
+        // Two clients drag the same room at once; all clients must agree afterwards.
+        int a = 1, b = CLIENTS - 1;
+        for (int i = 0; i < 50; i++) {
+            int step = i;
+            threads[a].execute(() -> plans[a].update(plans[a].get(roomId).withLocation(1000 + step, 500)));
+            threads[b].execute(() -> plans[b].update(plans[b].get(roomId).withLocation(2000 + step, 500)));
+        }
+        boolean converged = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!converged && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+            converged = sameRooms(plans, threads, clients, server.getSequence());
+        }
+        System.out.printf(Locale.ROOT, "conflicting drags: %s at sequence %d%n", converged ? "converged" : "DIVERGED", server.getSequence());
+        ok &= converged;
+
+        for (CollabClient client : clients) client.close();
+        server.close();
+        for (ExecutorService t : threads) t.shutdown();
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void awaitRooms(FloorPlan plan, ExecutorService thread, CollabClient client) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (thread.submit(() -> plan.isEmpty() || client.getClientId() == 0).get()) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("client did not join");
+            Thread.sleep(1);
+        }
+    }
+
+    /** True once every client has seen {@code sequence} and all hold the same room bounds. */
+    private static boolean sameRooms(FloorPlan[] plans, ExecutorService[] threads, CollabClient[] clients, long sequence)
+            throws Exception {
+        List<String> first = null;
+        for (int i = 0; i < plans.length; i++) {
+            if (clients[i].getSequence() < sequence) return false;
+            FloorPlan plan = plans[i];
+            List<String> rooms = threads[i].submit(() -> {
+                ArrayList<String> out = new ArrayList<>();
+                for (Room r : plan.rooms()) out.add(r.id + ":" + r.x + "," + r.y);
+                return out;
+            }).get();
+            if (first == null) first = rooms;
+            else if (!first.equals(rooms)) return false;
+        }
+        return true;
+    }
+
+    /** Raw protocol listeners that only time the arrival of each OPS frame. */
+    private static final class Listeners {
+        final long[] sentAt;
+        private final long[] latencies;
+        private int received = 0;
+        private int welcomed = 0;
+        private final long baseSequence;
+        private final Selector selector = Selector.open();
+        private final Thread thread;
+
+        Listeners(InetSocketAddress address, int count, int edits, long baseSequence) throws Exception {
+            this.sentAt = new long[edits];
+            this.latencies = new long[edits * count];
+            this.baseSequence = baseSequence;
+            for (int i = 0; i < count; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.write(ByteBuffer.allocate(5).putInt(1).put(CollabServer.HELLO).flip());
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(1 << 16));
+            }
+            thread = new Thread(this::run, "listeners");
+            thread.setDaemon(true);
+            thread.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (true) {
+                synchronized (this) {
+                    if (welcomed == count) break;
+                }
+                if (System.nanoTime() > deadline) throw new IllegalStateException("listeners did not join");
+                Thread.sleep(5);
+            }
+        }
+
+        private void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    long now = System.nanoTime();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ByteBuffer in = (ByteBuffer) key.attachment();
+                        if (((SocketChannel) key.channel()).read(in) < 0) {
+                            key.cancel();
+                            continue;
+                        }
+                        in.flip();
+                        while (in.remaining() >= 4 && in.remaining() >= 4 + in.getInt(in.position())) {
+                            int length = in.getInt();
+                            int kind = in.get(in.position());
+                            if (kind == CollabServer.WELCOME) {
+                                synchronized (this) {
+                                    welcomed++;
+                                }
+                            } else if (kind == CollabServer.OPS) {
+                                long edit = in.getLong(in.position() + 1) - baseSequence - 1;
+                                synchronized (this) {
+                                    if (edit >= 0 && edit < sentAt.length) latencies[received++] = now - sentAt[(int) edit];
+                                }
+                            }
+                            in.position(in.position() + length);
+                        }
+                        in.compact();
+                    }
+                }
+            } catch (Exception e) {
+                // closed
+            }
+        }
+
+        long[] await(long timeoutNanos) throws InterruptedException {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (System.nanoTime() < deadline) {
+                synchronized (this) {
+                    if (received == latencies.length) break;
+                }
+                Thread.sleep(10);
+            }
+            synchronized (this) {
+                long[] sorted = Arrays.copyOf(latencies, received);
+                Arrays.sort(sorted);
+                return sorted;
+            }
+        }
+
+        void close() throws Exception {
+            for (SelectionKey key : selector.keys()) key.channel().close();
+            selector.close();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Micro-benchmarks for the model, overlap, render and file I/O hot paths,
+ * parameterised by plan size. Each case is warmed up, then timed over several
+ * measurement rounds; the mean and best time per operation are reported,
+ * together with the heap allocated per operation where the JVM can measure it.
+ * Cases registered with {@link #benchNoAlloc} must not allocate at all; the
+ * run exits with status 1 if one does. Correctness checks live in
+ * {@link PlanChecks}.
+ *
+ * <pre>
+ *   javac -d out *.java bench/*.java
+ *   java -Djava.awt.headless=true -cp out PlanBenchmark [sizes...]
+ * </pre>
+ * Sizes default to 10, 100, 1000, 10000 and 100000 rooms.
+ */
+public class PlanBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 5;
+    private static final long ROUND_NANOS = 200_000_000L;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static volatile long sink;
+    private static boolean allocationFailure = false;
+
+    interface Case {
+        /** Runs one operation and returns a value that is fed to the sink. */
+        int run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {10, 100, 1_000, 10_000, 100_000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+        }
+        System.out.printf(Locale.ROOT, "%-22s %8s %14s %14s %12s%n", "benchmark", "rooms", "mean ns/op", "best ns/op", "alloc B/op");
+        for (int size : sizes) {
+            runSize(size);
+        }
+        if (allocationFailure) {
+            System.exit(1);
+        }
+    }
+
+    private static void runSize(int size) throws Exception {
+        FloorPlan plan = buildPlan(size, 42);
+        List<Room> rooms = new ArrayList<>(plan.rooms());
+        SplittableRandom random = new SplittableRandom(7);
+
+        bench("checkRoomOverlap", size, () -> {
+            Room r = rooms.get(random.nextInt(rooms.size()));
+            return plan.isAreaOccupied(r.x + 30, r.y + 30, r.width, r.height, r.id) ? 1 : 0;
+        });
+
+        Room furnished = denselyFurnished(64);
+        int[] east = centredOpening(furnished, Side.EAST, 30, 10);
+        int[] north = centredOpening(furnished, Side.NORTH, 30, 10);
+        benchNoAlloc("elementOverlap", size, () -> {
+            int x = random.nextInt(furnished.width), y = random.nextInt(furnished.height);
+            int hits = furnished.checkFurnitureOverlap(x, y, 25, 25) ? 1 : 0;
+            if (furnished.doors.intersectsAny(east[0], east[1], east[2], east[3])) hits++;
+            if (furnished.windows.intersectsAny(north[0], north[1], north[2], north[3])) hits++;
+            return hits;
+        });
+
+        bench("autoAdjustPosition", size, () -> {
+            Room r = rooms.get(random.nextInt(rooms.size()));
+            Room original = plan.get(r.id);
+            plan.update(original.withLocation(original.x + 40, original.y + 40));
+            Room adjusted = plan.autoAdjustPosition(r.id);
+            plan.update(original);
+            return adjusted.x;
+        });
+
+        BufferedImage image = new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        bench("paintRoom", size, () -> {
+            Room r = rooms.get(random.nextInt(rooms.size()));
+            FloorPlanCanvas.paintRoom(g, r.withLocation(r.x % 800, r.y % 800), false);
+            return r.id;
+        });
+        FloorPlanCanvas canvas = new FloorPlanCanvas(plan);
+        canvas.setSize(1024, 1024);
+        bench("paintPlan(1024x1024)", size, () -> {
+            canvas.paint(g);
+            return plan.size();
+        });
+        int[] step = {0};
+        bench("paintPlan(move one)", size, () -> {
+            Room r = plan.get(rooms.get(0).id);
+            plan.update(r.withLocation(r.x + ((step[0]++ & 1) == 0 ? 20 : -20), r.y));
+            canvas.paint(g);
+            return canvas.getRenderCache().getRebuildCount();
+        });
+        g.dispose();
+
+        PlanStatistics statistics = new PlanStatistics(plan, canvas.getWallGraph());
+        bench("statistics(move one)", size, () -> {
+            Room r = plan.get(rooms.get(0).id);
+            plan.update(r.withBounds(r.x, r.y, r.width + ((step[0]++ & 1) == 0 ? 20 : -20), r.height));
+            return (int) (statistics.group(PlanStatistics.OTHER).area() + statistics.wallLength());
+        });
+        statistics.dispose();
+
+        Path binary = Files.createTempFile("bench", ".fpl");
+        Path csv = Files.createTempFile("bench", ".csv");
+        try {
+            bench("saveOpen(binary)", size, () -> {
+                PlanFile.save(plan.rooms(), binary);
+                return PlanFile.read(binary).size();
+            });
+            bench("saveOpen(csv)", size, () -> {
+                PlanFile.save(plan.rooms(), csv);
+                return PlanFile.read(csv).size();
+            });
+        } finally {
+            Files.deleteIfExists(binary);
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    /** Lays rooms out on a lattice so that none overlap, with a door, window and some furniture each. */
+    static FloorPlan buildPlan(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        FloorPlan plan = new FloorPlan();
+        int columns = (int) Math.ceil(Math.sqrt(size));
+        int pitch = 12 * FloorPlan.GRID_SPACING;
+        FurnitureType[] furniture = {FurnitureType.BED, FurnitureType.SINK, FurnitureType.DINING_TABLE};
+        plan.batch(() -> {
+            for (int i = 0; i < size; i++) {
+                int width = (4 + random.nextInt(6)) * FloorPlan.GRID_SPACING;
+                int height = (4 + random.nextInt(6)) * FloorPlan.GRID_SPACING;
+                Room room = new Room("Room " + i, (i % columns) * pitch, (i / columns) * pitch, width, height, 0xC81E90FF);
+                int[] door = centredOpening(room, Side.NORTH, 30, 10);
+                int[] window = centredOpening(room, Side.SOUTH, 30, 10);
+                room = room.withDoor(door[0], door[1], door[2], door[3])
+                        .withWindow(window[0], window[1], window[2], window[3])
+                        .withFurniture(furniture[i % furniture.length], 20, 20, 40, 30);
+                plan.add(room);
+            }
+        });
+        return plan;
+    }
+
+    /**
+     * Rectangle, relative to {@code room}, of an opening {@code length} long
+     * and {@code depth} deep centred on one side, as the editor's door and
+     * window dialogs place it when no offset is given.
+     */
+    static int[] centredOpening(Room room, Side side, int length, int depth) {
+        WallGraph.Wall wall = WallGraph.of(List.of(room)).wallOf(room, side);
+        int start = wall.horizontal ? room.x + (room.width - length) / 2 : room.y + (room.height - length) / 2;
+        return WallGraph.openingRect(room, wall, start, length, depth);
+    }
+
+    /** A room with a door and window on every wall and {@code count} pieces of furniture on a lattice. */
+    static Room denselyFurnished(int count) {
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        Room room = new Room("Furnished", 0, 0, columns * 30 + 20, columns * 30 + 20, 0xFF808080);
+        for (Side side : Side.values()) {
+            int[] door = centredOpening(room, side, 20, 10);
+            int[] window = centredOpening(room, side, 10, 10);
+            room = room.withDoor(door[0], door[1], door[2], door[3]).withWindow(window[0], window[1], window[2], window[3]);
+        }
+        for (int i = 0; i < count; i++) {
+            room = room.withFurniture(FurnitureType.BED, 10 + (i % columns) * 30, 10 + (i / columns) * 30, 25, 25);
+        }
+        return room;
+    }
+
+    static void bench(String name, int size, Case body) throws Exception {
+        measure(name, size, body);
+    }
+
+    /** Like {@link #bench}, but flags the run as failed if the case allocates. */
+    static void benchNoAlloc(String name, int size, Case body) throws Exception {
+        double bytesPerOp = measure(name, size, body);
+        if (bytesPerOp >= 1) {
+            System.out.printf(Locale.ROOT, "  %s allocates %.1f bytes/op but must not allocate%n", name, bytesPerOp);
+            allocationFailure = true;
+        }
+    }
+
+    /** Runs warm-up and measurement rounds, prints a result line and returns bytes allocated per op, or -1. */
+    private static double measure(String name, int size, Case body) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            round(body);
+        }
+        double total = 0, best = Double.MAX_VALUE;
+        long ops = 0;
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            long[] result = round(body);
+            double nsPerOp = (double) result[0] / result[1];
+            ops += result[1];
+            total += nsPerOp;
+            best = Math.min(best, nsPerOp);
+        }
+        long allocatedAfter = allocatedBytes();
+        double bytesPerOp = allocatedBefore < 0 ? -1 : (double) (allocatedAfter - allocatedBefore) / ops;
+        System.out.printf(Locale.ROOT, "%-22s %8d %14.0f %14.0f %12s%n", name, size, total / MEASURE_ROUNDS, best,
+                bytesPerOp < 0 ? "n/a" : String.format(Locale.ROOT, "%.1f", bytesPerOp));
+        return bytesPerOp;
+    }
+
+    /** Bytes allocated so far by the current thread, or -1 if the JVM does not track it. */
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /** Returns elapsed nanoseconds and operation count. */
+    private static long[] round(Case body) throws Exception {
+        long ops = 0;
+        long acc = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            acc += body.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ROUND_NANOS);
+        sink = acc;
+        return new long[]{elapsed, ops};
+    }
+}
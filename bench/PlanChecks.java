@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Regression checks of behaviour that has broken before, kept apart from the
+ * benchmarks so those only measure. Each check prints a line when it fails;
+ * the run exits with status 1 if any did.
+ *
+ * <pre>
+ *   javac -d out *.java bench/*.java
+ *   java -Djava.awt.headless=true -cp out PlanChecks
+ * </pre>
+ */
+public class PlanChecks {
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        checkHistory();
+        checkCornerOpenings();
+        checkStatistics();
+        checkCsv();
+        if (failures > 0) {
+            System.exit(1);
+        }
+        System.out.println("All checks passed.");
+    }
+
+    /** Edits made after a discard are kept and can be undone. */
+    private static void checkHistory() {
+        FloorPlan plan = PlanBenchmark.buildPlan(200, 3);
+        PlanHistory history = new PlanHistory(plan, 64 << 10, 100_000);
+        for (Room r : new ArrayList<>(plan.rooms())) {
+            plan.update(r.withFurniture(FurnitureType.BED, 60, 60, 20, 20));
+        }
+        history.discardAllEdits();
+        Room first = plan.rooms().iterator().next();
+        plan.update(first.withLocation(first.x + 20, first.y));
+        plan.update(plan.get(first.id).withLocation(first.x + 40, first.y));
+        for (int i = 0; i < 2; i++) {
+            if (!history.canUndo()) {
+                fail("history: edits made after discardAllEdits were evicted");
+                return;
+            }
+            history.undo();
+        }
+        if (plan.get(first.id).x != first.x) fail("history: undo after discardAllEdits did not restore the room");
+    }
+
+    /** An opening in a room's corner belongs to the wall it runs along. */
+    private static void checkCornerOpenings() {
+        // A door in the north-west corner of a room, running down the west wall.
+        WallGraph walls = WallGraph.of(List.of(new Room("Corner", 0, 0, 100, 100, 0).withDoor(0, 0, 10, 30)));
+        if (walls.wallAt(false, 0, 50).openings().size() != 1 || !walls.wallAt(true, 0, 50).openings().isEmpty()) {
+            fail("walls: a corner door on the west wall was put on the north wall");
+        }
+        FloorPlan corner = new FloorPlan();
+        corner.add(new Room("Corner", 0, 0, 100, 100, 0).withWindow(0, 0, 10, 30));
+        if (new PlanStatistics(corner, WallGraph.of(corner.rooms())).total().windowLength() != 30) {
+            fail("statistics: a corner window on the west wall was measured across its depth");
+        }
+        // Furniture right of a west-wall corner door is in its swing; furniture below the door is not.
+        List<PlanValidator.Problem> swings = new ArrayList<>();
+        PlanValidator.validateElements(new Room("Corner", 0, 0, 100, 100, 0).withDoor(0, 0, 10, 30)
+                .withFurniture(FurnitureType.BED, 15, 5, 10, 10).withFurniture(FurnitureType.SINK, 0, 60, 10, 10), swings);
+        if (swings.stream().filter(p -> p.kind == PlanValidator.Kind.DOOR_SWING).count() != 1) {
+            fail("validation: the swing of a corner door on the west wall was projected into the room's north side");
+        }
+    }
+
+    /** Totals kept through many edits match totals built from scratch. */
+    private static void checkStatistics() {
+        FloorPlan plan = PlanBenchmark.buildPlan(500, 42);
+        FloorPlanCanvas canvas = new FloorPlanCanvas(plan);
+        PlanStatistics statistics = new PlanStatistics(plan, canvas.getWallGraph());
+        List<Room> rooms = new ArrayList<>(plan.rooms());
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 2000; i++) {
+            Room r = plan.get(rooms.get(random.nextInt(rooms.size())).id);
+            int dx = (random.nextInt(3) - 1) * FloorPlan.GRID_SPACING;
+            int dw = (random.nextInt(3) - 1) * FloorPlan.GRID_SPACING;
+            plan.update(r.withBounds(r.x + dx, r.y, Math.max(r.width + dw, 4 * FloorPlan.GRID_SPACING), r.height));
+        }
+        PlanStatistics rebuilt = new PlanStatistics(plan, WallGraph.of(plan.rooms()));
+        if (statistics.total().area() != rebuilt.total().area()
+                || statistics.total().windowLength() != rebuilt.total().windowLength()
+                || statistics.wallLength() != rebuilt.wallLength()) {
+            fail("statistics: incremental totals differ from a rebuild");
+        }
+        statistics.dispose();
+        rebuilt.dispose();
+    }
+
+    /** A legacy file with a damaged line fails to read instead of losing the line. */
+    private static void checkCsv() throws IOException {
+        Path csv = Files.createTempFile("checks", ".csv");
+        try {
+            Files.writeString(csv, "Hall,0,0,100,80,255\nKitchen,100,0,80\n");
+            PlanFile.readCsv(csv);
+            fail("files: a CSV line with missing fields was skipped");
+        } catch (IOException e) {
+            if (!e.getMessage().startsWith("Line 2:")) fail("files: a malformed CSV line was reported as '" + e.getMessage() + "'");
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    private static void fail(String message) {
+        System.out.println("FAILED " + message);
+        failures++;
+    }
+}